@@ -0,0 +1,39 @@
+package com.tinify;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/* Parsing of error bodies. Lives in this package because the reader is package private. The
+   WithGson variant parses the body the way the client did before, by reflection through Gson. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+    private final byte[] body = "{\"error\":\"TooManyRequests\",\"message\":\"Your monthly limit has been exceeded\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    public Exception.Data readError() throws IOException {
+        return Json.readError(body);
+    }
+
+    @Benchmark
+    public Exception.Data readErrorWithGson() {
+        return new Gson().fromJson(new String(body), Exception.Data.class);
+    }
+}
@@ -0,0 +1,134 @@
+package com.tinify.benchmarks;
+
+import com.tinify.Client;
+import com.tinify.ClientConfig;
+import com.tinify.ClientException;
+import com.tinify.Options;
+import com.tinify.RetryPolicy;
+import com.tinify.Transport;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/* Full request round trips against a local server that answers like the API.
+   Measures the client overhead: request building, connection reuse, retries
+   bookkeeping and response parsing. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientBenchmark {
+    @Param({"16384", "1048576"})
+    public int size;
+
+    /* The jdk transport needs Java 21 or later. */
+    @Param({"okhttp"})
+    public String transport;
+
+    private MockWebServer server;
+    private Client client;
+    private byte[] input;
+    private String location;
+    private Options resize;
+
+    @Setup
+    public void setup() throws IOException {
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+
+        input = new byte[size];
+        new Random(42).nextBytes(input);
+        final byte[] output = Arrays.copyOf(input, size / 2);
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override public MockResponse dispatch(final RecordedRequest request) {
+                String path = request.getPath();
+                if (path.equals("/shrink")) {
+                    return new MockResponse()
+                            .setResponseCode(201)
+                            .addHeader("Location", server.url("/output/example.png"))
+                            .addHeader("Compression-Count", "12")
+                            .setBody("{\"input\":{\"size\":" + size + ",\"type\":\"image/png\"}}");
+                } else if (path.startsWith("/output")) {
+                    return new MockResponse()
+                            .setResponseCode(200)
+                            .addHeader("Content-Type", "image/png")
+                            .addHeader("Image-Width", "530")
+                            .addHeader("Image-Height", "300")
+                            .addHeader("Compression-Count", "12")
+                            .setBody(new Buffer().write(output));
+                } else {
+                    return new MockResponse()
+                            .setResponseCode(400)
+                            .setBody("{\"error\":\"BadRequest\",\"message\":\"Oops!\"}");
+                }
+            }
+        });
+        server.start();
+
+        client = new Client("key", null, null, new ClientConfig()
+                .apiEndpoint(server.url("/").toString())
+                .retryPolicy(RetryPolicy.none())
+                .transport(transport.equals("jdk") ? Transport.jdk() : Transport.okhttp()));
+        location = server.url("/output/example.png").toString();
+        resize = new Options().with("resize", new Options().with("method", "fit").with("width", 150));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public Client.Response shrink() {
+        return client.request(Client.Method.POST, "/shrink", input);
+    }
+
+    @Benchmark
+    public Client.Response shrinkAsync() {
+        return client.requestAsync(Client.Method.POST, "/shrink", input).join();
+    }
+
+    @Benchmark
+    public Client.Response output() {
+        return client.request(Client.Method.GET, location);
+    }
+
+    @Benchmark
+    public Client.Response outputWithCommands() {
+        return client.request(Client.Method.POST, location, resize);
+    }
+
+    @Benchmark
+    public ClientException error() {
+        try {
+            client.request(Client.Method.POST, "/error", new byte[] {});
+            throw new AssertionError("Expected an error response");
+        } catch (ClientException e) {
+            return e;
+        }
+    }
+}
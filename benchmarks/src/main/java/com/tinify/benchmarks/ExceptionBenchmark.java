@@ -0,0 +1,32 @@
+package com.tinify.benchmarks;
+
+import com.tinify.Exception;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/* Mapping of API errors onto exceptions. Most of the cost is the stack trace. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExceptionBenchmark {
+    @Param({"400", "401", "429", "503"})
+    public int status;
+
+    @Benchmark
+    public Exception create() {
+        return Exception.create("Your monthly limit has been exceeded", "TooManyRequests", status);
+    }
+}
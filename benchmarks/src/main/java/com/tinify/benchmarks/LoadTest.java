@@ -0,0 +1,346 @@
+package com.tinify.benchmarks;
+
+import com.tinify.ClientConfig;
+import com.tinify.Result;
+import com.tinify.RetryPolicy;
+import com.tinify.Tinify;
+import com.tinify.Transport;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/* Drives Source.fromBuffer -> result() -> toFile with many compressions in
+   flight against a local server that answers like the API, and reports
+   throughput, latency percentiles, heap usage and thread counts.
+
+     java -cp target/benchmarks.jar com.tinify.benchmarks.LoadTest \
+         --concurrency 500 --requests 5000 --size 20MB --output 60% --latency 200ms
+
+   With --async the same work runs on the asynchronous API, with the number
+   of compressions in flight limited by --concurrency instead of by threads. */
+public final class LoadTest {
+    private int concurrency = 50;
+    private int requests = 1000;
+    private int warmup = 100;
+    private int size = 1024 * 1024;
+    private int outputPercent = 60;
+    private long latency = 0;
+    private boolean async = false;
+    private boolean jdk = false;
+
+    private final AtomicLong peakHeap = new AtomicLong();
+    private final AtomicInteger peakThreads = new AtomicInteger();
+
+    private LoadTest() {
+    }
+
+    public static void main(final String[] args) throws java.lang.Exception {
+        LoadTest test = new LoadTest();
+        test.parse(args);
+        test.run();
+    }
+
+    private void parse(final String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (name.equals("--async")) {
+                async = true;
+                continue;
+            }
+            if (i + 1 == args.length) usage("Missing value for " + name);
+            String value = args[++i];
+            switch (name) {
+                case "--concurrency": concurrency = Integer.parseInt(value); break;
+                case "--requests": requests = Integer.parseInt(value); break;
+                case "--warmup": warmup = Integer.parseInt(value); break;
+                case "--size": size = (int) bytes(value); break;
+                case "--output": outputPercent = Integer.parseInt(value.replace("%", "")); break;
+                case "--latency": latency = millis(value); break;
+                case "--transport": jdk = value.equals("jdk"); break;
+                default: usage("Unknown option " + name);
+            }
+        }
+        if (concurrency < 1 || requests < 1 || warmup < 0 || size < 1 || outputPercent < 1) {
+            usage("Values must be positive");
+        }
+    }
+
+    private static void usage(final String error) {
+        System.err.println(error);
+        System.err.println("Options: --concurrency N --requests N --warmup N --size 20MB --output 60% --latency 200ms --transport okhttp|jdk --async");
+        System.exit(2);
+    }
+
+    private static long bytes(final String value) {
+        String upper = value.toUpperCase(Locale.ROOT);
+        if (upper.endsWith("KB")) return Long.parseLong(upper.substring(0, upper.length() - 2)) * 1024;
+        if (upper.endsWith("MB")) return Long.parseLong(upper.substring(0, upper.length() - 2)) * 1024 * 1024;
+        if (upper.endsWith("B")) return Long.parseLong(upper.substring(0, upper.length() - 1));
+        return Long.parseLong(upper);
+    }
+
+    private static long millis(final String value) {
+        if (value.endsWith("ms")) return Long.parseLong(value.substring(0, value.length() - 2));
+        if (value.endsWith("s")) return TimeUnit.SECONDS.toMillis(Long.parseLong(value.substring(0, value.length() - 1)));
+        return Long.parseLong(value);
+    }
+
+    private void run() throws java.lang.Exception {
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+
+        byte[] input = new byte[size];
+        new Random(42).nextBytes(input);
+        byte[] output = Arrays.copyOf(input, (int) ((long) size * outputPercent / 100));
+
+        MockWebServer server = new MockWebServer();
+        /* Request bodies are read but not kept, or the server would hold every upload. */
+        server.setBodyLimit(0);
+        server.setDispatcher(new ApiDispatcher(server, output, latency));
+        server.start();
+
+        Tinify.setConfig(new ClientConfig()
+                .apiEndpoint(server.url("/").toString())
+                .maxRequests(concurrency)
+                .maxRequestsPerHost(concurrency)
+                .maxIdleConnections(concurrency)
+                .retryPolicy(RetryPolicy.none())
+                .transport(jdk ? Transport.jdk() : Transport.okhttp()));
+        Tinify.setKey("load-test");
+
+        Path directory = Files.createTempDirectory("tinify-load");
+        ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-test-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            System.out.printf(Locale.ROOT, "%s load over %s: %d requests, %d in flight, %s input, %s output, %d ms server latency%n",
+                    async ? "Async" : "Sync", jdk ? "java.net.http" : "OkHttp", requests, concurrency, megabytes(size), megabytes(output.length), latency);
+
+            if (warmup > 0) {
+                System.out.printf(Locale.ROOT, "Warming up with %d requests%n", warmup);
+                execute(input, directory, warmup);
+            }
+
+            System.gc();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+            peakHeap.set(0);
+            peakThreads.set(0);
+            long gcCount = gcCount();
+            long gcTime = gcTime();
+
+            monitor.scheduleAtFixedRate(() -> {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                peakThreads.accumulateAndGet(threads.getThreadCount(), Math::max);
+            }, 0, 50, TimeUnit.MILLISECONDS);
+
+            long start = System.nanoTime();
+            Outcome outcome = execute(input, directory, requests);
+            long elapsed = System.nanoTime() - start;
+
+            report(outcome, elapsed, output.length, memory, threads, gcCount() - gcCount, gcTime() - gcTime);
+        } finally {
+            monitor.shutdownNow();
+            server.shutdown();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static final class Outcome {
+        final long[] latencies;
+        final AtomicInteger failures = new AtomicInteger();
+        volatile Throwable lastFailure;
+
+        Outcome(final int requests) {
+            latencies = new long[requests];
+            Arrays.fill(latencies, -1);
+        }
+
+        void failed(final Throwable error) {
+            failures.incrementAndGet();
+            lastFailure = error;
+        }
+    }
+
+    private Outcome execute(final byte[] input, final Path directory, final int count) throws InterruptedException {
+        return async ? executeAsync(input, directory, count) : executeSync(input, directory, count);
+    }
+
+    /* One thread per compression in flight, as a typical servlet application would. */
+    private Outcome executeSync(final byte[] input, final Path directory, final int count) throws InterruptedException {
+        final Outcome outcome = new Outcome(count);
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(concurrency);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int worker = 0; worker < concurrency; worker++) {
+            final Path file = directory.resolve("output-" + worker + ".png");
+            workers.execute(() -> {
+                try {
+                    int n;
+                    while ((n = next.getAndIncrement()) < count) {
+                        long start = System.nanoTime();
+                        try (Result result = Tinify.fromBuffer(input).result()) {
+                            result.toFile(file);
+                            outcome.latencies[n] = System.nanoTime() - start;
+                        } catch (IOException | RuntimeException e) {
+                            outcome.failed(e);
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        workers.shutdown();
+        return outcome;
+    }
+
+    private Outcome executeAsync(final byte[] input, final Path directory, final int count) throws InterruptedException {
+        final Outcome outcome = new Outcome(count);
+        final Semaphore permits = new Semaphore(concurrency);
+        final CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            permits.acquire();
+            final int n = i;
+            final Path file = directory.resolve("output-" + n + ".png");
+            final long start = System.nanoTime();
+            Tinify.fromBufferAsync(input)
+                    .thenCompose(source -> source.resultAsync())
+                    .thenCompose(result -> result.toFileAsync(file.toString()))
+                    .whenComplete((ignored, error) -> {
+                        if (error == null) {
+                            outcome.latencies[n] = System.nanoTime() - start;
+                        } else {
+                            outcome.failed(error);
+                        }
+                        file.toFile().delete();
+                        permits.release();
+                        done.countDown();
+                    });
+        }
+        done.await();
+        return outcome;
+    }
+
+    private void report(final Outcome outcome, final long elapsed, final long outputSize, final MemoryMXBean memory,
+                        final ThreadMXBean threads, final long gcCount, final long gcTime) {
+        long[] latencies = Arrays.stream(outcome.latencies).filter(latency -> latency >= 0).sorted().toArray();
+        double seconds = elapsed / 1e9;
+        int succeeded = latencies.length;
+
+        System.out.println();
+        System.out.printf(Locale.ROOT, "Requests:     %d succeeded, %d failed%n", succeeded, outcome.failures.get());
+        if (outcome.lastFailure != null) {
+            System.out.printf(Locale.ROOT, "Last failure: %s%n", outcome.lastFailure);
+        }
+        System.out.printf(Locale.ROOT, "Elapsed:      %.2f s%n", seconds);
+        System.out.printf(Locale.ROOT, "Throughput:   %.1f compressions/s, %.1f MB/s up, %.1f MB/s down%n",
+                succeeded / seconds, succeeded * (double) size / seconds / (1024 * 1024),
+                succeeded * (double) outputSize / seconds / (1024 * 1024));
+        if (succeeded > 0) {
+            System.out.printf(Locale.ROOT, "Latency (ms): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                    percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                    percentile(latencies, 99.9), latencies[latencies.length - 1] / 1e6);
+        }
+        System.out.printf(Locale.ROOT, "Heap:         peak %s used, %s max%n",
+                megabytes(peakHeap.get()), megabytes(memory.getHeapMemoryUsage().getMax()));
+        System.out.printf(Locale.ROOT, "Threads:      peak %d sampled, %d JVM peak%n",
+                peakThreads.get(), threads.getPeakThreadCount());
+        System.out.printf(Locale.ROOT, "GC:           %d collections, %d ms%n", gcCount, gcTime);
+    }
+
+    /* Nearest rank on the sorted latencies, in milliseconds. */
+    private static double percentile(final long[] sorted, final double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)] / 1e6;
+    }
+
+    private static String megabytes(final long bytes) {
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    /* Answers uploads with a location on the same server, and outputs with a
+       fixed body, after the configured latency. */
+    private static final class ApiDispatcher extends Dispatcher {
+        private final MockWebServer server;
+        private final byte[] output;
+        private final long latency;
+
+        ApiDispatcher(final MockWebServer server, final byte[] output, final long latency) {
+            this.server = server;
+            this.output = output;
+            this.latency = latency;
+        }
+
+        @Override public MockResponse dispatch(final RecordedRequest request) {
+            String path = request.getPath();
+            MockResponse response;
+            if ("/shrink".equals(path)) {
+                response = new MockResponse()
+                        .setResponseCode(201)
+                        .addHeader("Location", server.url("/output/" + Long.toHexString(System.nanoTime()) + ".png"))
+                        .addHeader("Compression-Count", "1")
+                        .setBody("{\"input\":{\"type\":\"image/png\"},\"output\":{\"type\":\"image/png\"}}");
+            } else if (path != null && path.startsWith("/output/")) {
+                response = new MockResponse()
+                        .setResponseCode(200)
+                        .addHeader("Content-Type", "image/png")
+                        .addHeader("Image-Width", "530")
+                        .addHeader("Image-Height", "300")
+                        .addHeader("Compression-Count", "1")
+                        .setBody(new Buffer().write(output));
+            } else {
+                response = new MockResponse()
+                        .setResponseCode(404)
+                        .setBody("{\"error\":\"NotFound\",\"message\":\"Unknown path\"}");
+            }
+            return latency > 0 ? response.setHeadersDelay(latency, TimeUnit.MILLISECONDS) : response;
+        }
+    }
+}
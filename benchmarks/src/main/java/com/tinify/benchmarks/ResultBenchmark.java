@@ -0,0 +1,60 @@
+package com.tinify.benchmarks;
+
+import com.tinify.Result;
+import okhttp3.Headers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/* Writing a buffered result to disk. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResultBenchmark {
+    @Param({"16384", "1048576"})
+    public int size;
+
+    private Headers headers;
+    private byte[] data;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        data = new byte[size];
+        new Random(42).nextBytes(data);
+        headers = new Headers.Builder()
+                .add("Content-Type", "image/png")
+                .add("Content-Length", Integer.toString(size))
+                .build();
+        file = Files.createTempFile("tinify-benchmark", ".png");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Path toFile() throws IOException {
+        new Result(headers, data).toFile(file);
+        return file;
+    }
+}
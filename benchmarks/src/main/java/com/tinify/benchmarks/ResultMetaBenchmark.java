@@ -0,0 +1,86 @@
+package com.tinify.benchmarks;
+
+import com.tinify.Result;
+import com.tinify.ResultMeta;
+import okhttp3.Headers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/* Header parsing of results, with the headers of a typical output response. The WithHeaderLookups
+   variants read the headers the way results did before, with a lookup and parse on every call. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultMetaBenchmark {
+    private Headers headers;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        headers = new Headers.Builder()
+                .add("Date", "Mon, 14 Oct 2024 12:00:00 GMT")
+                .add("Content-Type", "image/png")
+                .add("Content-Length", "30734")
+                .add("Connection", "keep-alive")
+                .add("Image-Width", "530")
+                .add("Image-Height", "300")
+                .add("Compression-Count", "12")
+                .add("Location", "https://api.tinify.com/output/example.png")
+                .add("Strict-Transport-Security", "max-age=31536000; includeSubDomains; preload")
+                .add("X-Content-Type-Options", "nosniff")
+                .build();
+        data = new byte[0];
+    }
+
+    @Benchmark
+    public ResultMeta parse() {
+        return new ResultMeta(headers);
+    }
+
+    @Benchmark
+    public void dimensions(final Blackhole blackhole) {
+        ResultMeta meta = new ResultMeta(headers);
+        blackhole.consume(meta.width());
+        blackhole.consume(meta.height());
+        blackhole.consume(meta.location());
+    }
+
+    @Benchmark
+    public void result(final Blackhole blackhole) {
+        Result result = new Result(headers, data);
+        blackhole.consume(result.size());
+        blackhole.consume(result.mediaType());
+        blackhole.consume(result.extension());
+    }
+
+    @Benchmark
+    public void dimensionsWithHeaderLookups(final Blackhole blackhole) {
+        String width = headers.get("image-width");
+        blackhole.consume(width == null ? null : Integer.parseInt(width));
+        String height = headers.get("image-height");
+        blackhole.consume(height == null ? null : Integer.parseInt(height));
+        blackhole.consume(headers.get("location"));
+    }
+
+    @Benchmark
+    public void resultWithHeaderLookups(final Blackhole blackhole) {
+        String size = headers.get("content-length");
+        blackhole.consume(size == null ? null : Integer.parseInt(size));
+        blackhole.consume(headers.get("content-type"));
+        blackhole.consume(headers.get("content-type").replaceFirst(".*/(.*)", "$1"));
+    }
+}
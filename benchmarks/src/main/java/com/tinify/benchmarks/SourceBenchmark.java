@@ -0,0 +1,47 @@
+package com.tinify.benchmarks;
+
+import com.tinify.Options;
+import com.tinify.Source;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/* Chaining commands onto a source copies its options for every step. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SourceBenchmark {
+    private Source source;
+    private Options resize;
+    private Options convert;
+
+    @Setup
+    public void setup() {
+        source = new Source("https://api.tinify.com/output/example.png", new Options());
+        resize = new Options().with("method", "fit").with("width", 150).with("height", 100);
+        convert = new Options().with("type", new String[] {"image/webp", "image/avif"});
+    }
+
+    @Benchmark
+    public Source resize() {
+        return source.resize(resize);
+    }
+
+    @Benchmark
+    public Source chain() {
+        return source.preserve("copyright", "creation").resize(resize).convert(convert)
+                .transform(new Options().with("background", "white"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.tinify;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/* A semaphore that hands out permits through futures instead of blocking,
+   so a waiting pipeline stage does not occupy a thread. */
+final class AsyncPermits {
+    private final Queue<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+    private int available;
+
+    AsyncPermits(final int permits) {
+        this.available = permits;
+    }
+
+    CompletableFuture<Void> acquire() {
+        synchronized (this) {
+            if (available > 0) {
+                available--;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            waiting.add(future);
+            return future;
+        }
+    }
+
+    void release() {
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    available++;
+                    return;
+                }
+            }
+            /* Complete outside the lock; the waiter continues on this thread.
+               A waiter that was cancelled passes the permit on. */
+            if (next.complete(null)) return;
+        }
+    }
+
+    /* Runs a step once a permit is available, and releases it when the step completes. */
+    <T> CompletableFuture<T> run(final Supplier<CompletableFuture<T>> step) {
+        return acquire().thenCompose(ignored -> {
+            CompletableFuture<T> future;
+            try {
+                future = step.get();
+            } catch (RuntimeException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            return future.whenComplete((value, error) -> release());
+        });
+    }
+}
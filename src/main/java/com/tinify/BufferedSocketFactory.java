@@ -0,0 +1,47 @@
+package com.tinify;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+
+/* Creates sockets with explicit send and receive buffer sizes. TLS sockets
+   are layered on top of these, so the sizes apply to HTTPS as well. */
+final class BufferedSocketFactory extends SocketFactory {
+    private final int sendBufferSize;
+    private final int receiveBufferSize;
+
+    BufferedSocketFactory(final int sendBufferSize, final int receiveBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    @Override public Socket createSocket() throws IOException {
+        return configure(new Socket());
+    }
+
+    @Override public Socket createSocket(final String host, final int port) throws IOException {
+        return configure(new Socket(host, port));
+    }
+
+    @Override public Socket createSocket(final String host, final int port,
+                                         final InetAddress localHost, final int localPort) throws IOException {
+        return configure(new Socket(host, port, localHost, localPort));
+    }
+
+    @Override public Socket createSocket(final InetAddress host, final int port) throws IOException {
+        return configure(new Socket(host, port));
+    }
+
+    @Override public Socket createSocket(final InetAddress address, final int port,
+                                         final InetAddress localAddress, final int localPort) throws IOException {
+        return configure(new Socket(address, port, localAddress, localPort));
+    }
+
+    private Socket configure(final Socket socket) throws SocketException {
+        if (sendBufferSize > 0) socket.setSendBufferSize(sendBufferSize);
+        if (receiveBufferSize > 0) socket.setReceiveBufferSize(receiveBufferSize);
+        return socket;
+    }
+}
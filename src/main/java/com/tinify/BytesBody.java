@@ -0,0 +1,36 @@
+package com.tinify;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/* Image data or a JSON document that is already in memory. */
+final class BytesBody extends Transport.Body {
+    private final String contentType;
+    private final byte[] bytes;
+
+    BytesBody(final String contentType, final byte[] bytes) {
+        this.contentType = contentType;
+        this.bytes = bytes;
+    }
+
+    BytesBody(final String contentType, final String content) {
+        this(contentType, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    @Override public String contentType() {
+        return contentType;
+    }
+
+    @Override public long contentLength() {
+        return bytes.length;
+    }
+
+    @Override public void writeTo(final OutputStream out) throws IOException {
+        out.write(bytes);
+    }
+}
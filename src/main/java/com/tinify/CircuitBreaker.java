@@ -0,0 +1,191 @@
+package com.tinify;
+
+import java.util.concurrent.TimeUnit;
+
+/* Stops sending requests while the API is failing. The breaker is closed
+   while the failure rate of the most recent requests stays below the
+   threshold. Once it is exceeded the breaker opens, and requests fail with a
+   CircuitOpenException before anything is uploaded. After the open duration
+   a few probe requests are let through: if they all succeed the breaker
+   closes, if one fails it opens again. Connection errors and server errors
+   count as failures; other responses show that the API is up. One instance
+   can be shared by several clients. */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private double failureThreshold = 0.5;
+    private int windowSize = 20;
+    private int minimumCalls = 10;
+    private long openDuration = TimeUnit.SECONDS.toNanos(30);
+    private int probes = 3;
+
+    private State state = State.CLOSED;
+    private boolean[] outcomes = new boolean[windowSize];
+    private int outcomeCount = 0;
+    private int nextOutcome = 0;
+    private int failures = 0;
+    private long openedAt = 0;
+    private int probing = 0;
+    private int probeSuccesses = 0;
+    /* Changes on every transition, so late outcomes of requests that were
+       sent in an earlier state are ignored. */
+    private long generation = 0;
+
+    /* The fraction of failed requests in the window that opens the breaker. */
+    public CircuitBreaker failureThreshold(final double failureThreshold) {
+        if (!(failureThreshold > 0 && failureThreshold <= 1)) {
+            throw new IllegalArgumentException("Failure threshold must be between 0 and 1");
+        }
+        this.failureThreshold = failureThreshold;
+        return this;
+    }
+
+    public final double failureThreshold() {
+        return failureThreshold;
+    }
+
+    /* The number of most recent requests the failure rate is taken over. */
+    public synchronized CircuitBreaker windowSize(final int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1");
+        }
+        this.windowSize = windowSize;
+        reset();
+        return this;
+    }
+
+    public final int windowSize() {
+        return windowSize;
+    }
+
+    /* The breaker does not open before this many requests are in the window. */
+    public CircuitBreaker minimumCalls(final int minimumCalls) {
+        if (minimumCalls < 1) {
+            throw new IllegalArgumentException("Minimum calls must be at least 1");
+        }
+        this.minimumCalls = minimumCalls;
+        return this;
+    }
+
+    public final int minimumCalls() {
+        return minimumCalls;
+    }
+
+    public CircuitBreaker openDuration(final long duration, final TimeUnit unit) {
+        this.openDuration = unit.toNanos(duration);
+        return this;
+    }
+
+    public final long openDuration() {
+        return TimeUnit.NANOSECONDS.toMillis(openDuration);
+    }
+
+    /* The number of successful probes that closes a half open breaker. */
+    public CircuitBreaker probes(final int probes) {
+        if (probes < 1) {
+            throw new IllegalArgumentException("Probes must be at least 1");
+        }
+        this.probes = probes;
+        return this;
+    }
+
+    public final int probes() {
+        return probes;
+    }
+
+    /* An open breaker reports half open once its open duration has passed,
+       even before the next request probes the API. */
+    public final synchronized State state() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDuration) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /* The failure rate of the requests in the window while closed. */
+    public final synchronized double failureRate() {
+        return outcomeCount == 0 ? 0 : (double) failures / outcomeCount;
+    }
+
+    final synchronized boolean isOpen() {
+        return state() == State.OPEN;
+    }
+
+    /* Returns a permit to pass to record() or cancel(), or throws when no
+       request may be sent. */
+    final synchronized long acquire() {
+        if (state == State.OPEN) {
+            long remaining = openDuration - (System.nanoTime() - openedAt);
+            if (remaining > 0) {
+                long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+                throw new CircuitOpenException("Circuit breaker is open, retry in " + millis + " ms", millis);
+            }
+            transition(State.HALF_OPEN);
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (probing >= probes - probeSuccesses) {
+                throw new CircuitOpenException("Circuit breaker is half open, waiting for probes", 0);
+            }
+            probing++;
+        }
+        return generation;
+    }
+
+    final synchronized void record(final long permit, final boolean failed) {
+        if (permit != generation) return;
+
+        if (state == State.HALF_OPEN) {
+            probing--;
+            if (failed) {
+                transition(State.OPEN);
+            } else if (++probeSuccesses >= probes) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+
+        if (outcomeCount == windowSize) {
+            if (outcomes[nextOutcome]) failures--;
+        } else {
+            outcomeCount++;
+        }
+        outcomes[nextOutcome] = failed;
+        if (failed) failures++;
+        nextOutcome = (nextOutcome + 1) % windowSize;
+
+        if (outcomeCount >= minimumCalls && failures >= failureThreshold * outcomeCount) {
+            transition(State.OPEN);
+        }
+    }
+
+    /* Gives back a permit of a request that was never sent. */
+    final synchronized void cancel(final long permit) {
+        if (permit == generation && state == State.HALF_OPEN) {
+            probing--;
+        }
+    }
+
+    private void transition(final State next) {
+        state = next;
+        generation++;
+        probing = 0;
+        probeSuccesses = 0;
+        if (next == State.OPEN) {
+            openedAt = System.nanoTime();
+        } else if (next == State.CLOSED) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        outcomes = new boolean[windowSize];
+        outcomeCount = 0;
+        nextOutcome = 0;
+        failures = 0;
+    }
+}
@@ -0,0 +1,12 @@
+package com.tinify;
+
+/* Thrown without sending a request while the circuit breaker is open. The
+   retry after is the number of milliseconds until a probe is allowed. */
+public class CircuitOpenException extends ConnectionException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(final String message, final long retryAfter) {
+        super(message, null);
+        this.retryAfter = retryAfter;
+    }
+}
@@ -1,42 +1,60 @@
 package com.tinify;
 
-import com.google.gson.Gson;
-
-import okhttp3.OkHttpClient;
-import okhttp3.Authenticator;
-import okhttp3.Credentials;
-import okhttp3.Headers;
-import okhttp3.HttpUrl;
-import okhttp3.MediaType;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.ResponseBody;
-import okhttp3.Route;
-
 import java.io.IOException;
-import java.net.Proxy;
-import java.net.InetSocketAddress;
-import java.net.Proxy.Type;
-import java.net.URL;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 public class Client {
     public class Response {
-        public Headers headers;
+        public Transport.Headers headers;
         public byte[] body;
+        public InputStream stream;
 
-        public Response(Headers headers, byte[] body) {
+        public Response(Transport.Headers headers, byte[] body) {
             this.headers = headers;
             this.body = body;
         }
+
+        public Response(Transport.Headers headers, InputStream stream) {
+            this.headers = headers;
+            this.stream = stream;
+        }
     }
 
-    private OkHttpClient client;
-    private String credentials;
-    private String userAgent;
+    private final Transport transport;
+    private final String key;
+    private final String apiEndpoint;
+    private final Transport.Headers requestHeaders;
+    private RetryPolicy retryPolicy;
+    private RateLimiter.Bucket rateLimit;
+    private final Hedging hedging;
+    private final CircuitBreaker circuitBreaker;
+    private final Executor executor;
+
+    /* Tracked for routing in a ClientPool. */
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger compressionCount = new AtomicInteger(-1);
+    private final List<CompressionCountListener> compressionCountListeners;
+    private volatile long unavailableUntil = 0;
 
-    public static final MediaType JSON
-            = MediaType.parse("application/json; charset=utf-8");
+    public static final String JSON = "application/json; charset=utf-8";
 
     public static final String API_ENDPOINT = "https://api.tinify.com";
 
@@ -49,6 +67,16 @@ public class Client {
             + " (" + System.getProperty("java.vendor")
             + ", " + System.getProperty("os.name") + " " + System.getProperty("os.arch") + ")";
 
+    /* Delays asynchronous retries without blocking a thread per pending request. */
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Tinify scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     public enum Method {
         POST,
         GET
@@ -63,166 +91,597 @@ public class Client {
     }
 
     public Client(final String key, final String appIdentifier, final String proxy) {
-        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        this(key, appIdentifier, proxy, new ClientConfig());
+    }
 
-        if (proxy != null) {
-            try {
-                URL url = new URL(proxy);
-                Proxy proxyAddress = createProxyAddress(url);
-                Authenticator proxyAuthenticator = createProxyAuthenticator(url);
-
-                if (proxyAddress != null) {
-                    builder.proxy(proxyAddress);
-                    if (proxyAuthenticator != null) {
-                        builder.proxyAuthenticator(proxyAuthenticator);
-                    }
-                }
-            } catch (java.lang.Exception e) {
-                throw new ConnectionException("Invalid proxy: " + e.getMessage(), e);
-            }
+    public Client(final String key, final String appIdentifier, final String proxy, final ClientConfig config) {
+        this(config.transport().create(proxy, config), key, appIdentifier, config);
+    }
+
+    /* Clients created with the same transport share its connections. */
+    Client(final Transport transport, final String key, final String appIdentifier, final ClientConfig config) {
+        this.transport = transport;
+        this.key = key;
+        apiEndpoint = config.apiEndpoint();
+        compressionCountListeners = config.compressionCountListeners();
+        retryPolicy = config.retryPolicy();
+        hedging = config.hedging();
+        circuitBreaker = config.circuitBreaker();
+        executor = config.executor();
+        if (config.rateLimiter() != null) {
+            rateLimit = config.rateLimiter().bucket(key);
         }
 
-        builder.sslSocketFactory(TLSContext.socketFactory, TLSContext.trustManager);
-        builder.connectTimeout(0, TimeUnit.SECONDS);
-        builder.readTimeout(0, TimeUnit.SECONDS);
-        builder.writeTimeout(0, TimeUnit.SECONDS);
+        requestHeaders = Transport.Headers.of(
+                "Authorization", basic("api", key),
+                "User-Agent", appIdentifier == null ? USER_AGENT : USER_AGENT + " " + appIdentifier);
+    }
+
+    public final int connectionCount() {
+        return transport.connectionCount();
+    }
 
-        client = builder.build();
+    public final int idleConnectionCount() {
+        return transport.idleConnectionCount();
+    }
 
-        credentials = Credentials.basic("api", key);
-        if (appIdentifier == null) {
-            userAgent = USER_AGENT;
-        } else {
-            userAgent = USER_AGENT + " " + appIdentifier;
-        }
+    public final int activeConnectionCount() {
+        return connectionCount() - idleConnectionCount();
+    }
+
+    public final int runningRequestCount() {
+        return transport.runningRequestCount();
+    }
+
+    public final int queuedRequestCount() {
+        return transport.queuedRequestCount();
     }
 
     public final Response request(final Method method, final String endpoint) throws Exception {
         /* OkHttp does not support null request bodies if the method is POST. */
         if (method.equals(Method.POST)) {
-            return request(method, endpoint, RequestBody.create(null, new byte[] {}));
+            return request(method, endpoint, new BytesBody(null, new byte[] {}));
         } else {
-            return request(method, endpoint, (RequestBody) null);
+            return request(method, endpoint, (Transport.Body) null);
         }
     }
 
     public final Response request(final Method method, final String endpoint, final Options options) throws Exception {
         /* OkHttp does not support null request bodies if the method is POST. */
         if (method.equals(Method.GET)) {
-            return request(method, endpoint, options.isEmpty() ? null : RequestBody.create(JSON, options.toJson()));
+            return request(method, endpoint, options.isEmpty() ? null : new BytesBody(JSON, options.toJson()), false, endpointOf(endpoint, options));
         } else {
-            return request(method, endpoint, RequestBody.create(JSON, options.toJson()));
+            return request(method, endpoint, new BytesBody(JSON, options.toJson()), false, endpointOf(endpoint, options));
         }
     }
 
     public final Response request(final Method method, final String endpoint, final byte[] body) throws Exception {
-        return request(method, endpoint, RequestBody.create(null, body));
+        return request(method, endpoint, new BytesBody(null, body));
     }
 
-    private Proxy createProxyAddress(final URL proxy) {
-        if (proxy == null) return null;
+    public final Response request(final Method method, final String endpoint, final Path file) throws Exception, IOException {
+        return request(method, endpoint, new FileBody(file));
+    }
 
-        String host = proxy.getHost();
-        int port = proxy.getPort();
+    public final Response request(final Method method, final String endpoint, final InputStream stream, final long length) throws Exception {
+        return request(method, endpoint, new StreamBody(stream, length));
+    }
 
-        if (port < 0) {
-            port = proxy.getDefaultPort();
+    public final Response requestStream(final Method method, final String endpoint) throws Exception {
+        /* OkHttp does not support null request bodies if the method is POST. */
+        if (method.equals(Method.POST)) {
+            return request(method, endpoint, new BytesBody(null, new byte[] {}), true);
+        } else {
+            return request(method, endpoint, null, true);
         }
-
-        return new Proxy(Proxy.Type.HTTP, new InetSocketAddress(host, port));
     }
 
-    private Authenticator createProxyAuthenticator(final URL proxy) {
-        if (proxy == null) return null;
+    public final Response requestStream(final Method method, final String endpoint, final Options options) throws Exception {
+        /* OkHttp does not support null request bodies if the method is POST. */
+        if (method.equals(Method.GET)) {
+            return request(method, endpoint, options.isEmpty() ? null : new BytesBody(JSON, options.toJson()), true, endpointOf(endpoint, options));
+        } else {
+            return request(method, endpoint, new BytesBody(JSON, options.toJson()), true, endpointOf(endpoint, options));
+        }
+    }
 
-        String user = proxy.getUserInfo();
-        if (user == null) return null;
+    public final CompletableFuture<Response> requestAsync(final Method method, final String endpoint) {
+        /* OkHttp does not support null request bodies if the method is POST. */
+        if (method.equals(Method.POST)) {
+            return requestAsync(method, endpoint, new BytesBody(null, new byte[] {}));
+        } else {
+            return requestAsync(method, endpoint, (Transport.Body) null);
+        }
+    }
 
-        final String username, password;
-        int c = user.indexOf(':');
-        if (0 < c) {
-            username = user.substring(0, c);
-            password = user.substring(c + 1);
+    public final CompletableFuture<Response> requestAsync(final Method method, final String endpoint, final Options options) {
+        /* OkHttp does not support null request bodies if the method is POST. */
+        if (method.equals(Method.GET)) {
+            return requestAsync(method, endpoint, options.isEmpty() ? null : new BytesBody(JSON, options.toJson()), endpointOf(endpoint, options));
         } else {
-            username = user;
-            password = null;
+            return requestAsync(method, endpoint, new BytesBody(JSON, options.toJson()), endpointOf(endpoint, options));
         }
+    }
 
-        return new Authenticator() {
-            @Override public Request authenticate(Route route, okhttp3.Response response) throws IOException {
-                String credential = Credentials.basic(username, password);
-                return response.request().newBuilder().header("Proxy-Authorization", credential).build();
-            }
-        };
+    public final CompletableFuture<Response> requestAsync(final Method method, final String endpoint, final byte[] body) {
+        return requestAsync(method, endpoint, new BytesBody(null, body));
     }
 
-    private Response request(final Method method, final String endpoint, final RequestBody body) throws Exception {
-        HttpUrl url;
-        if (endpoint.startsWith("https")) {
-            url = HttpUrl.parse(endpoint);
-        } else {
-            url = HttpUrl.parse(API_ENDPOINT + endpoint);
+    public final CompletableFuture<Response> requestAsync(final Method method, final String endpoint, final Path file) throws IOException {
+        return requestAsync(method, endpoint, new FileBody(file));
+    }
+
+    public final CompletableFuture<Response> requestAsync(final Method method, final String endpoint, final InputStream stream, final long length) {
+        return requestAsync(method, endpoint, new StreamBody(stream, length));
+    }
+
+    private Response request(final Method method, final String endpoint, final Transport.Body body) throws Exception {
+        return request(method, endpoint, body, false, endpointOf(endpoint, null));
+    }
+
+    private Response request(final Method method, final String endpoint, final Transport.Body body, final boolean stream) throws Exception {
+        return request(method, endpoint, body, stream, endpointOf(endpoint, null));
+    }
+
+    private Response request(final Method method, final String endpoint, final Transport.Body body, final boolean stream,
+                             final TinifyEventListener.Endpoint kind) throws Exception {
+        pending.incrementAndGet();
+        try {
+            return send(method, endpoint, body, stream, kind);
+        } finally {
+            pending.decrementAndGet();
         }
+    }
+
+    private Response send(final Method method, final String endpoint, final Transport.Body body, final boolean stream,
+                          final TinifyEventListener.Endpoint kind) throws Exception {
+        String url = url(endpoint);
+        long start = System.nanoTime();
+        boolean upload = isUpload(body);
+        Object event = Flight.beginApiCall();
+        RequestContext context = RequestContext.current();
+
+        for (int attempt = 1; ; attempt++) {
+            Response response = null;
+            int status = 0;
+            Exception failure = null;
+            boolean abandoned = false;
+
+            if (context != null && context.isExpired()) {
+                trace(event, method, kind, url, 0, body, null, attempt);
+                throw new DeadlineExceededException("Deadline exceeded before the request was sent");
+            }
 
-        for (short retries = RETRY_COUNT; retries >= 0; retries--) {
-            if (retries < RETRY_COUNT) {
+            long permit = 0;
+            if (circuitBreaker != null) {
                 try {
-                    Thread.sleep(RETRY_DELAY);
-                } catch(InterruptedException ex) {
-                    Thread.currentThread().interrupt();
+                    permit = circuitBreaker.acquire();
+                } catch (CircuitOpenException e) {
+                    trace(event, method, kind, url, 0, body, null, attempt);
+                    throw e;
                 }
             }
 
-            Request request = new Request.Builder()
-                    .header("Authorization", credentials)
-                    .header("User-Agent", userAgent)
-                    .url(url)
-                    .method(method.toString(), body)
-                    .build();
-
-            Response response;
-            int status;
-
             try {
-                okhttp3.Response res = client.newCall(request).execute();
-                status = res.code();
-                response = new Response(res.headers(), res.body().bytes());
+                if (rateLimit != null) rateLimit.acquire(upload);
+            } catch (RuntimeException e) {
+                if (circuitBreaker != null) circuitBreaker.cancel(permit);
+                throw e;
+            }
+            try {
+                Transport.Request request = newRequest(method, url, body, stream, kind, attempt, context);
+                Transport.Response res = isHedged(method, stream)
+                        ? hedging.execute(transport, request, scheduler)
+                        : transport.execute(request);
+                status = res.status();
+                if (res.stream() != null) {
+                    /* The caller is responsible for closing the stream. */
+                    response = new Response(res.headers(), res.stream());
+                } else {
+                    response = new Response(res.headers(), res.body());
+                }
             } catch (java.lang.Exception e) {
-                if (retries > 0) continue;
-                throw new ConnectionException("Error while connecting: " + e.getMessage(), e);
+                failure = connectionError(e, context);
+                /* An expired deadline or an interrupt says nothing about the API. */
+                abandoned = failure instanceof DeadlineExceededException || Thread.currentThread().isInterrupted();
+            } finally {
+                if (rateLimit != null) rateLimit.release(upload);
             }
 
-            String compressionCount = response.headers.get("Compression-Count");
-            if (compressionCount != null && !compressionCount.isEmpty()) {
-                Tinify.setCompressionCount(Integer.valueOf(compressionCount));
+            if (failure == null) {
+                updateCompressionCount(response);
+                updateRateLimit(status, response);
+
+                if (status >= 200 && status < 300) {
+                    if (circuitBreaker != null) circuitBreaker.record(permit, false);
+                    trace(event, method, kind, url, status, body, response, attempt);
+                    return response;
+                }
+                failure = error(status, response);
+            }
+            if (circuitBreaker != null) {
+                if (abandoned) {
+                    circuitBreaker.cancel(permit);
+                } else {
+                    circuitBreaker.record(permit, RetryPolicy.isTransient(failure));
+                }
             }
 
-            if (status >= 200 && status < 300) {
-                return response;
+            long delay = retryDelay(attempt, start, body, failure);
+            if (outlasts(context, delay)) {
+                delay = -1;
+                failure = new DeadlineExceededException("Deadline exceeded before retrying: " + failure.getMessage(), failure);
+            }
+            if (delay < 0) {
+                trace(event, method, kind, url, status, body, response, attempt);
+                throw failure;
             }
 
-            Exception.Data data;
-            Gson gson = new Gson();
             try {
-                data = gson.fromJson(new String(response.body), Exception.Data.class);
-                if (data == null) {
-                    data = new Exception.Data();
-                    data.setMessage("Error while parsing response: received empty body");
-                    data.setError("ParseError");
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                trace(event, method, kind, url, status, body, response, attempt);
+                throw failure;
+            }
+        }
+    }
+
+    private CompletableFuture<Response> requestAsync(final Method method, final String endpoint, final Transport.Body body) {
+        return requestAsync(method, endpoint, body, endpointOf(endpoint, null));
+    }
+
+    private CompletableFuture<Response> requestAsync(final Method method, final String endpoint, final Transport.Body body,
+                                                     final TinifyEventListener.Endpoint kind) {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        pending.incrementAndGet();
+        future.whenComplete((response, error) -> pending.decrementAndGet());
+
+        /* Failing the future when the deadline passes also cancels the request in flight. */
+        RequestContext context = RequestContext.current();
+        if (context != null) {
+            final ScheduledFuture<?> timer = scheduler.schedule(new Runnable() {
+                @Override public void run() {
+                    future.completeExceptionally(new DeadlineExceededException("Deadline exceeded"));
+                }
+            }, Math.max(0, context.remainingNanos()), TimeUnit.NANOSECONDS);
+            future.whenComplete((response, error) -> timer.cancel(false));
+        }
+
+        attemptAsync(method, url(endpoint), body, kind, 1, System.nanoTime(), future, Flight.beginApiCall(), context);
+        return completeAsync(future);
+    }
+
+    /* The request is completed on the scheduler or a transport thread, which
+       must not run the stages of the caller. The returned future completes on
+       the executor instead, and cancelling it cancels the request. */
+    private CompletableFuture<Response> completeAsync(final CompletableFuture<Response> future) {
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        BiConsumer<Response, Throwable> complete = (response, error) -> {
+            if (error == null) {
+                result.complete(response);
+            } else {
+                result.completeExceptionally(error);
+            }
+        };
+        CompletableFuture<Response> completed = executor == null
+                ? future.whenCompleteAsync(complete) : future.whenCompleteAsync(complete, executor);
+        completed.whenComplete((response, error) -> {
+            /* The executor rejected the task. */
+            if (!result.isDone()) future.whenComplete(complete);
+        });
+        result.whenComplete((response, error) -> {
+            if (!future.isDone()) future.cancel(true);
+        });
+        return result;
+    }
+
+    private void attemptAsync(final Method method, final String url, final Transport.Body body,
+                              final TinifyEventListener.Endpoint kind, final int attempt, final long start,
+                              final CompletableFuture<Response> future, final Object event,
+                              final RequestContext context) {
+        if (future.isDone()) return;
+
+        final long permit;
+        try {
+            permit = circuitBreaker != null ? circuitBreaker.acquire() : 0;
+        } catch (CircuitOpenException e) {
+            trace(event, method, kind, url, 0, body, null, attempt);
+            future.completeExceptionally(e);
+            return;
+        }
+
+        if (rateLimit == null) {
+            sendAsync(method, url, body, kind, attempt, start, future, false, event, permit, context);
+            return;
+        }
+
+        final boolean upload = isUpload(body);
+        rateLimit.acquireAsync(upload, scheduler).whenComplete((ignored, error) -> {
+            if (error == null) {
+                sendAsync(method, url, body, kind, attempt, start, future, upload, event, permit, context);
+            } else {
+                if (circuitBreaker != null) circuitBreaker.cancel(permit);
+                future.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+            }
+        });
+    }
+
+    private void sendAsync(final Method method, final String url, final Transport.Body body,
+                           final TinifyEventListener.Endpoint kind, final int attempt,
+                           final long start, final CompletableFuture<Response> future, final boolean upload,
+                           final Object event, final long permit, final RequestContext context) {
+        if (future.isDone()) {
+            if (rateLimit != null) rateLimit.release(upload);
+            if (circuitBreaker != null) circuitBreaker.cancel(permit);
+            return;
+        }
+
+        final CompletableFuture<Transport.Response> exchange;
+        try {
+            Transport.Request request = newRequest(method, url, body, false, kind, attempt, context);
+            exchange = isHedged(method, false)
+                    ? hedging.executeAsync(transport, request, scheduler)
+                    : transport.executeAsync(request);
+        } catch (java.lang.Exception e) {
+            if (rateLimit != null) rateLimit.release(upload);
+            if (circuitBreaker != null) circuitBreaker.record(permit, true);
+            trace(event, method, kind, url, 0, body, null, attempt);
+            future.completeExceptionally(new ConnectionException("Error while connecting: " + e.getMessage(), e));
+            return;
+        }
+
+        /* Cancelling the returned future, or its deadline passing, aborts the
+           request that is in flight. */
+        future.whenComplete((response, error) -> {
+            if (!exchange.isDone()) exchange.cancel(true);
+        });
+
+        exchange.whenComplete(new BiConsumer<Transport.Response, Throwable>() {
+            @Override public void accept(final Transport.Response res, final Throwable error) {
+                if (rateLimit != null) rateLimit.release(upload);
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    if (cause instanceof CancellationException) {
+                        /* Cancelled by the caller, which says nothing about the API. */
+                        if (circuitBreaker != null) circuitBreaker.cancel(permit);
+                    } else if (circuitBreaker != null) {
+                        circuitBreaker.record(permit, true);
+                    }
+                    failed(connectionError(cause, context), 0, null);
+                    return;
                 }
-            } catch (com.google.gson.JsonParseException e) {
+
+                int status = res.status();
+                Response response = new Response(res.headers(), res.body());
+
+                updateCompressionCount(response);
+                updateRateLimit(status, response);
+
+                if (status >= 200 && status < 300) {
+                    if (circuitBreaker != null) circuitBreaker.record(permit, false);
+                    trace(event, method, kind, url, status, body, response, attempt);
+                    future.complete(response);
+                } else {
+                    Exception failure = error(status, response);
+                    if (circuitBreaker != null) circuitBreaker.record(permit, RetryPolicy.isTransient(failure));
+                    failed(failure, status, response);
+                }
+            }
+
+            /* Retries are scheduled, so no thread waits for them. */
+            private void failed(final Exception failure, final int status, final Response response) {
+                Exception error = failure;
+                long delay = retryDelay(attempt, start, body, failure);
+                if (outlasts(context, delay)) {
+                    delay = -1;
+                    error = new DeadlineExceededException("Deadline exceeded before retrying: " + failure.getMessage(), failure);
+                }
+                if (delay < 0) {
+                    trace(event, method, kind, url, status, body, response, attempt);
+                    future.completeExceptionally(error);
+                    return;
+                }
+
+                scheduler.schedule(new Runnable() {
+                    @Override public void run() {
+                        attemptAsync(method, url, body, kind, attempt + 1, start, future, event, context);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    /* Commits the flight recorder event of a request once it has its final outcome. */
+    private static void trace(final Object event, final Method method, final TinifyEventListener.Endpoint kind,
+                              final String url, final int status, final Transport.Body body, final Response response,
+                              final int attempt) {
+        if (event == null) return;
+        long sent = 0;
+        if (body != null) {
+            sent = Math.max(body.contentLength(), 0);
+        }
+        long received = 0;
+        if (response != null && response.body != null) {
+            received = response.body.length;
+        } else if (response != null) {
+            /* Streamed outputs are still being read, so report their announced length. */
+            try {
+                received = Long.parseLong(response.headers.get("Content-Length"));
+            } catch (NumberFormatException e) {
+                received = 0;
+            }
+        }
+        Flight.apiCall(event, method, kind, url, status, sent, received, attempt - 1);
+    }
+
+    /* A retry would only be rejected while the circuit breaker is open. */
+    private long retryDelay(final int attempt, final long start, final Transport.Body body, final Exception failure) {
+        if (!isReplayable(body) || failure instanceof DeadlineExceededException) return -1;
+        if (circuitBreaker != null && circuitBreaker.isOpen()) return -1;
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return retryPolicy.delay(attempt, elapsed, failure);
+    }
+
+    /* True when a retry after the delay would start after the deadline. */
+    private static boolean outlasts(final RequestContext context, final long delay) {
+        return delay >= 0 && context != null && TimeUnit.MILLISECONDS.toNanos(delay) >= context.remainingNanos();
+    }
+
+    /* Transports abort exchanges at the deadline, which shows up as an I/O error. */
+    private static Exception connectionError(final Throwable cause, final RequestContext context) {
+        if (context != null && context.isExpired()) {
+            return new DeadlineExceededException("Deadline exceeded: " + cause.getMessage(), cause);
+        }
+        return new ConnectionException("Error while connecting: " + cause.getMessage(), cause);
+    }
+
+    /* Only GETs are idempotent, and a streamed body cannot be raced. */
+    private boolean isHedged(final Method method, final boolean stream) {
+        return hedging != null && method == Method.GET && !stream;
+    }
+
+    /* Uploads are the requests that send image data rather than JSON. */
+    private static boolean isUpload(final Transport.Body body) {
+        if (body == null || body.contentType() != null) return false;
+        return body.contentLength() != 0;
+    }
+
+    private void updateRateLimit(final int status, final Response response) {
+        if (rateLimit == null) return;
+        if (status == 429) {
+            rateLimit.limited(retryAfter(response.headers.get("Retry-After")));
+        } else if (status >= 200 && status < 300) {
+            rateLimit.succeeded();
+        }
+    }
+
+    /* A stream that has been (partially) sent cannot be sent again. */
+    private static boolean isReplayable(final Transport.Body body) {
+        return !(body instanceof StreamBody) || !((StreamBody) body).isConsumed();
+    }
+
+    private String url(final String endpoint) {
+        if (endpoint.startsWith("https://") || endpoint.startsWith("http://")) {
+            return endpoint;
+        } else {
+            return apiEndpoint + endpoint;
+        }
+    }
+
+    private static String basic(final String username, final String password) {
+        byte[] credentials = (username + ":" + password).getBytes(StandardCharsets.ISO_8859_1);
+        return "Basic " + Base64.getEncoder().encodeToString(credentials);
+    }
+
+    private Transport.Request newRequest(final Method method, final String url, final Transport.Body body,
+                                         final boolean stream, final TinifyEventListener.Endpoint kind,
+                                         final int attempt, final RequestContext context) {
+        return new Transport.Request(method.toString(), url, requestHeaders, body, stream, kind, attempt,
+                context);
+    }
+
+    private static TinifyEventListener.Endpoint endpointOf(final String endpoint, final Options options) {
+        if (endpoint.endsWith("/shrink")) {
+            return TinifyEventListener.Endpoint.SHRINK;
+        } else if (options != null && options.contains("store")) {
+            return TinifyEventListener.Endpoint.STORE;
+        } else {
+            return TinifyEventListener.Endpoint.OUTPUT;
+        }
+    }
+
+    private void updateCompressionCount(final Response response) {
+        String value = response.headers.get("Compression-Count");
+        if (value == null || value.isEmpty()) return;
+
+        int count;
+        try {
+            count = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        Tinify.setCompressionCount(count);
+        if (compressionCount.getAndSet(count) == count) return;
+
+        for (CompressionCountListener listener : compressionCountListeners) {
+            try {
+                listener.compressionCountChanged(key, count);
+            } catch (RuntimeException ignored) {
+                /* A listener must not fail the request that reported the count. */
+            }
+        }
+    }
+
+    final String key() {
+        return key;
+    }
+
+    final int pending() {
+        return pending.get();
+    }
+
+    /* Compressions this month for the key of this client, as reported by the
+       last response; -1 until a response reported it. */
+    public final int compressionCount() {
+        return compressionCount.get();
+    }
+
+    final boolean isAvailable() {
+        long until = unavailableUntil;
+        return until == 0 || System.currentTimeMillis() >= until;
+    }
+
+    final void makeAvailable() {
+        unavailableUntil = 0;
+    }
+
+    private Exception error(final int status, final Response response) {
+        Exception.Data data;
+        try {
+            data = Json.readError(response.body);
+            if (data == null) {
                 data = new Exception.Data();
-                data.setMessage("Error while parsing response: " + e.getMessage());
+                data.setMessage("Error while parsing response: received empty body");
                 data.setError("ParseError");
             }
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            data = new Exception.Data();
+            data.setMessage("Error while parsing response: " + e);
+            data.setError("ParseError");
+        }
+
+        Exception exception = Exception.create(
+                data.getMessage(),
+                data.getError(),
+                status);
+        if (status == 429 || status == 503) {
+            exception.retryAfter = retryAfter(response.headers.get("Retry-After"));
+        }
 
-            if (retries > 0 && status >= 500) continue;
-            throw Exception.create(
-                    data.getMessage(),
-                    data.getError(),
-                    status);
+        /* Invalid credentials stay unavailable; a rate limit only until Retry-After. */
+        if (status == 401 || (status == 429 && exception.retryAfter < 0)) {
+            unavailableUntil = Long.MAX_VALUE;
+        } else if (status == 429) {
+            unavailableUntil = System.currentTimeMillis() + Math.max(1, exception.retryAfter);
         }
+        return exception;
+    }
 
-        return null;
+    /* Retry-After is either a number of seconds or an HTTP date. */
+    static long retryAfter(final String value) {
+        if (value == null) return -1;
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException ignored) {
+                return -1;
+            }
+        }
     }
 }
@@ -0,0 +1,249 @@
+package com.tinify;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+public class ClientConfig {
+    private String apiEndpoint = Client.API_ENDPOINT;
+    private int maxIdleConnections = 5;
+    private long keepAlive = TimeUnit.MINUTES.toMillis(5);
+    private long connectTimeout = 0;
+    private long readTimeout = 0;
+    private long writeTimeout = 0;
+    private long callTimeout = 0;
+    private int maxRequests = 64;
+    private int maxRequestsPerHost = 5;
+    private boolean http2 = true;
+    private boolean virtualThreads = false;
+    private int sendBufferSize = 0;
+    private int receiveBufferSize = 0;
+    private RateLimiter rateLimiter = null;
+    private Hedging hedging = null;
+    private CircuitBreaker circuitBreaker = null;
+    private Executor executor = null;
+    private TinifyEventListener eventListener = TinifyEventListener.NONE;
+    private final List<CompressionCountListener> compressionCountListeners = new CopyOnWriteArrayList<>();
+    private Transport.Factory transport = Transport.okhttp();
+    private RetryPolicy retryPolicy = RetryPolicy.fixed(Client.RETRY_COUNT, Client.RETRY_DELAY, TimeUnit.MILLISECONDS);
+
+    /* For a local test server or an API gateway. Absolute output locations
+       returned by the API are requested as they are. */
+    public ClientConfig apiEndpoint(final String apiEndpoint) {
+        if (apiEndpoint == null) {
+            throw new IllegalArgumentException("API endpoint must not be null");
+        }
+        this.apiEndpoint = apiEndpoint.endsWith("/")
+                ? apiEndpoint.substring(0, apiEndpoint.length() - 1) : apiEndpoint;
+        return this;
+    }
+
+    public final String apiEndpoint() {
+        return apiEndpoint;
+    }
+
+    public ClientConfig maxIdleConnections(final int maxIdleConnections) {
+        this.maxIdleConnections = maxIdleConnections;
+        return this;
+    }
+
+    public final int maxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public ClientConfig keepAlive(final long duration, final TimeUnit unit) {
+        this.keepAlive = unit.toMillis(duration);
+        return this;
+    }
+
+    /* Milliseconds an idle connection is kept in the pool. */
+    public final long keepAlive() {
+        return keepAlive;
+    }
+
+    /* Timeouts are in milliseconds, and 0 waits indefinitely, which is the
+       default. The read and write timeouts apply to each socket operation,
+       so a slow but steady upload does not time out. The call timeout covers
+       a single attempt from start to end; a RequestContext puts a deadline
+       on all attempts together. Transport.jdk() has no read and write
+       timeouts. */
+    public ClientConfig connectTimeout(final long duration, final TimeUnit unit) {
+        this.connectTimeout = unit.toMillis(duration);
+        return this;
+    }
+
+    public final long connectTimeout() {
+        return connectTimeout;
+    }
+
+    public ClientConfig readTimeout(final long duration, final TimeUnit unit) {
+        this.readTimeout = unit.toMillis(duration);
+        return this;
+    }
+
+    public final long readTimeout() {
+        return readTimeout;
+    }
+
+    public ClientConfig writeTimeout(final long duration, final TimeUnit unit) {
+        this.writeTimeout = unit.toMillis(duration);
+        return this;
+    }
+
+    public final long writeTimeout() {
+        return writeTimeout;
+    }
+
+    public ClientConfig callTimeout(final long duration, final TimeUnit unit) {
+        this.callTimeout = unit.toMillis(duration);
+        return this;
+    }
+
+    public final long callTimeout() {
+        return callTimeout;
+    }
+
+    public ClientConfig maxRequests(final int maxRequests) {
+        this.maxRequests = maxRequests;
+        return this;
+    }
+
+    public final int maxRequests() {
+        return maxRequests;
+    }
+
+    /* All API calls go to the same host, so this limits the number of
+       concurrent asynchronous requests. */
+    public ClientConfig maxRequestsPerHost(final int maxRequestsPerHost) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        return this;
+    }
+
+    public final int maxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /* With HTTP/2 concurrent requests are multiplexed over a single connection.
+       Disable it to spread requests over multiple HTTP/1.1 connections. */
+    public ClientConfig http2(final boolean http2) {
+        this.http2 = http2;
+        return this;
+    }
+
+    public final boolean http2() {
+        return http2;
+    }
+
+    /* Runs asynchronous requests, and therefore batches, on virtual threads
+       when the runtime is Java 21 or later. Older runtimes keep using platform
+       threads. Raise maxRequests and maxRequestsPerHost to allow more
+       concurrent requests. */
+    public ClientConfig virtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    public final boolean virtualThreads() {
+        return virtualThreads;
+    }
+
+    /* Socket buffer sizes in bytes; 0 keeps the system default. */
+    public ClientConfig sendBufferSize(final int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+        return this;
+    }
+
+    public final int sendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public ClientConfig receiveBufferSize(final int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+        return this;
+    }
+
+    public final int receiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /* Event listeners need the OkHttp transport; other transports do not report
+       connection phases. */
+    public ClientConfig transport(final Transport.Factory transport) {
+        this.transport = transport == null ? Transport.okhttp() : transport;
+        return this;
+    }
+
+    public final Transport.Factory transport() {
+        return transport;
+    }
+
+    public ClientConfig retryPolicy(final RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public final RetryPolicy retryPolicy() {
+        return retryPolicy;
+    }
+
+    /* Off by default. */
+    public ClientConfig rateLimiter(final RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    public final RateLimiter rateLimiter() {
+        return rateLimiter;
+    }
+
+    /* Off by default. Hedges GET requests for outputs. */
+    public ClientConfig hedging(final Hedging hedging) {
+        this.hedging = hedging;
+        return this;
+    }
+
+    public final Hedging hedging() {
+        return hedging;
+    }
+
+    /* Off by default. Fails requests immediately while the API is down. */
+    public ClientConfig circuitBreaker(final CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    public final CircuitBreaker circuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /* Completes the futures of asynchronous requests, and so runs the stages
+       chained to them. Defaults to the pool of CompletableFuture's async methods. */
+    public ClientConfig executor(final Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public final Executor executor() {
+        return executor;
+    }
+
+    /* Listeners are shared by all clients created with this config. */
+    public ClientConfig compressionCountListener(final CompressionCountListener listener) {
+        this.compressionCountListeners.add(listener);
+        return this;
+    }
+
+    final List<CompressionCountListener> compressionCountListeners() {
+        return compressionCountListeners;
+    }
+
+    public ClientConfig eventListener(final TinifyEventListener eventListener) {
+        this.eventListener = eventListener == null ? TinifyEventListener.NONE : eventListener;
+        return this;
+    }
+
+    public final TinifyEventListener eventListener() {
+        return eventListener;
+    }
+}
@@ -0,0 +1,112 @@
+package com.tinify;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Spreads work over several API keys. All keys share one connection pool and
+   dispatcher. Each call to client() picks the key with the fewest requests in
+   flight, and among those the one with the lowest compression count, which
+   the API reports with every response. A key that is rejected with 401 is
+   taken out of rotation, and so is a key that is rate limited with 429, until
+   its Retry-After has passed. Use with Tinify.setClientPool(...); a source
+   keeps using the key it was uploaded with. */
+public class ClientPool {
+    private final List<Client> clients;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile int quota = 0;
+
+    public ClientPool(final Collection<String> keys) {
+        this(keys, null, null, new ClientConfig());
+    }
+
+    public ClientPool(final Collection<String> keys, final String appIdentifier, final String proxy,
+                      final ClientConfig config) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("Provide at least one API key");
+        }
+
+        Transport shared = config.transport().create(proxy, config);
+        List<Client> clients = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            clients.add(new Client(shared, key, appIdentifier, config));
+        }
+        this.clients = Collections.unmodifiableList(clients);
+    }
+
+    /* Compressions per key per month. Keys that reached it are skipped; 0
+       means the limit is unknown. */
+    public ClientPool quota(final int quota) {
+        this.quota = quota;
+        return this;
+    }
+
+    public final int quota() {
+        return quota;
+    }
+
+    public final List<Client> clients() {
+        return clients;
+    }
+
+    /* The last reported compression count of each key, -1 if none was reported yet. */
+    public final Map<String, Integer> compressionCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Client client : clients) {
+            counts.put(client.key(), client.compressionCount());
+        }
+        return counts;
+    }
+
+    public final int availableCount() {
+        int count = 0;
+        for (Client client : clients) {
+            if (isEligible(client)) count++;
+        }
+        return count;
+    }
+
+    /* Puts keys that were taken out of rotation back, for example at the start
+       of a new month. */
+    public void restore() {
+        for (Client client : clients) {
+            client.makeAvailable();
+        }
+    }
+
+    public Client client() {
+        int size = clients.size();
+        /* Rotate the starting point so that ties are spread over all keys. */
+        int start = Math.floorMod(next.getAndIncrement(), size);
+
+        Client best = null;
+        for (int i = 0; i < size; i++) {
+            Client client = clients.get((start + i) % size);
+            if (!isEligible(client)) continue;
+            if (best == null || isLessLoaded(client, best)) {
+                best = client;
+            }
+        }
+
+        if (best == null) {
+            throw new AccountException("No API key available: all keys are rejected or over quota");
+        }
+        return best;
+    }
+
+    private boolean isEligible(final Client client) {
+        int limit = quota;
+        return client.isAvailable() && (limit <= 0 || client.compressionCount() < limit);
+    }
+
+    private static boolean isLessLoaded(final Client client, final Client other) {
+        int pending = client.pending();
+        int otherPending = other.pending();
+        if (pending != otherPending) return pending < otherPending;
+        return Math.max(client.compressionCount(), 0) < Math.max(other.compressionCount(), 0);
+    }
+}
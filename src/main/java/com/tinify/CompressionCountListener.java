@@ -0,0 +1,26 @@
+package com.tinify;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* Called when a response reports a different compression count for an API
+   key. Listeners run on the thread that received the response, so they
+   should return quickly; exceptions they throw are ignored. */
+@FunctionalInterface
+public interface CompressionCountListener {
+    void compressionCountChanged(String key, int count);
+
+    /* Calls the listener once per key when the count reaches the threshold.
+       It is armed again when the count drops below it, as it does when the
+       monthly count is reset. */
+    static CompressionCountListener threshold(final int threshold, final CompressionCountListener listener) {
+        final Map<String, Boolean> reached = new ConcurrentHashMap<>();
+        return (key, count) -> {
+            if (count < threshold) {
+                reached.remove(key);
+            } else if (reached.putIfAbsent(key, Boolean.TRUE) == null) {
+                listener.compressionCountChanged(key, count);
+            }
+        };
+    }
+}
@@ -0,0 +1,15 @@
+package com.tinify;
+
+/* Thrown when the deadline of a RequestContext passes before a request
+   completes. Requests still in flight are cancelled. */
+public class DeadlineExceededException extends ConnectionException {
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(final String message) {
+        super(message, null);
+    }
+
+    public DeadlineExceededException(final String message, final Throwable t) {
+        super(message, t);
+    }
+}
@@ -0,0 +1,160 @@
+package com.tinify;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+/* Records the phases of one OkHttp call and reports them to a
+   TinifyEventListener when the call ends. OkHttp calls these methods
+   sequentially for a call, so plain fields are enough. */
+final class EventRecorder extends EventListener {
+    /* Attached to each request so the recorder knows what it measures. */
+    static final class Tag {
+        final TinifyEventListener.Endpoint endpoint;
+        final int attempt;
+
+        Tag(final TinifyEventListener.Endpoint endpoint, final int attempt) {
+            this.endpoint = endpoint;
+            this.attempt = attempt;
+        }
+    }
+
+    static final class Factory implements EventListener.Factory {
+        private final TinifyEventListener listener;
+
+        Factory(final TinifyEventListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public EventListener create(final Call call) {
+            return new EventRecorder(listener);
+        }
+    }
+
+    private final TinifyEventListener listener;
+    private long callStart;
+    private long dnsStart;
+    private long dns = -1;
+    private long connectStart;
+    private long connect = -1;
+    private long tlsStart;
+    private long tls = -1;
+    private long requestBodyStart;
+    private long requestBody = -1;
+    private long requestEnd;
+    private long waiting = -1;
+    private long responseBodyStart;
+    private long responseBody = -1;
+    private long bytesSent = 0;
+    private long bytesReceived = 0;
+    private int status = 0;
+
+    EventRecorder(final TinifyEventListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void callStart(final Call call) {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(final Call call, final String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(final Call call, final String domainName, final List<InetAddress> addresses) {
+        dns = System.nanoTime() - dnsStart;
+    }
+
+    @Override
+    public void connectStart(final Call call, final InetSocketAddress address, final Proxy proxy) {
+        connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(final Call call) {
+        tlsStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(final Call call, final Handshake handshake) {
+        tls = System.nanoTime() - tlsStart;
+    }
+
+    @Override
+    public void connectEnd(final Call call, final InetSocketAddress address, final Proxy proxy,
+                           final Protocol protocol) {
+        connect = System.nanoTime() - connectStart;
+    }
+
+    @Override
+    public void requestHeadersEnd(final Call call, final Request request) {
+        requestEnd = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyStart(final Call call) {
+        requestBodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(final Call call, final long byteCount) {
+        requestEnd = System.nanoTime();
+        requestBody = requestEnd - requestBodyStart;
+        bytesSent += byteCount;
+    }
+
+    @Override
+    public void responseHeadersEnd(final Call call, final Response response) {
+        waiting = System.nanoTime() - requestEnd;
+        status = response.code();
+    }
+
+    @Override
+    public void responseBodyStart(final Call call) {
+        responseBodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(final Call call, final long byteCount) {
+        responseBody = System.nanoTime() - responseBodyStart;
+        bytesReceived += byteCount;
+    }
+
+    @Override
+    public void callEnd(final Call call) {
+        report(call, null);
+    }
+
+    @Override
+    public void callFailed(final Call call, final IOException failure) {
+        report(call, failure);
+    }
+
+    private void report(final Call call, final IOException failure) {
+        Request request = call.request();
+        Tag tag = request.tag(Tag.class);
+        RequestEvent event = new RequestEvent(
+                tag == null ? null : tag.endpoint, request.method(), request.url().toString(),
+                tag == null ? 1 : tag.attempt, status, failure,
+                dns, connect, tls, requestBody, waiting, responseBody, System.nanoTime() - callStart,
+                bytesSent, bytesReceived);
+        try {
+            listener.requestFinished(event);
+        } catch (RuntimeException ignored) {
+            /* Instrumentation must not fail the request. */
+        }
+    }
+}
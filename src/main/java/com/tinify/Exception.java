@@ -35,6 +35,7 @@ public class Exception extends RuntimeException {
     }
 
     int status = 0;
+    long retryAfter = -1;
 
     public Exception() {
         super();
@@ -56,4 +57,13 @@ public class Exception extends RuntimeException {
         super(message + " (HTTP " + status + "/" + type + ")");
         this.status = status;
     }
+
+    public final int getStatus() {
+        return status;
+    }
+
+    /* Milliseconds the server asked to wait before retrying, or -1. */
+    public final long getRetryAfter() {
+        return retryAfter;
+    }
 }
@@ -0,0 +1,70 @@
+package com.tinify;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/* Retries with exponential backoff and full jitter: the delay before attempt
+   n + 1 is random between 0 and baseDelay * 2^(n - 1), capped at maxDelay, so
+   clients that failed together do not retry together. When the server sends
+   Retry-After, the delay is at least that long. A 429 response is only
+   retried if it has Retry-After, because without it the limit is the monthly
+   compression count, which waiting does not fix. */
+public class ExponentialBackoff implements RetryPolicy {
+    private int maxRetries = 3;
+    private long baseDelay = 500;
+    private long maxDelay = TimeUnit.SECONDS.toMillis(30);
+    private long maxElapsed = TimeUnit.SECONDS.toMillis(60);
+
+    public ExponentialBackoff maxRetries(final int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public final int maxRetries() {
+        return maxRetries;
+    }
+
+    public ExponentialBackoff baseDelay(final long delay, final TimeUnit unit) {
+        this.baseDelay = unit.toMillis(delay);
+        return this;
+    }
+
+    public final long baseDelay() {
+        return baseDelay;
+    }
+
+    public ExponentialBackoff maxDelay(final long delay, final TimeUnit unit) {
+        this.maxDelay = unit.toMillis(delay);
+        return this;
+    }
+
+    public final long maxDelay() {
+        return maxDelay;
+    }
+
+    /* No retry is started that would end later than this after the first attempt. */
+    public ExponentialBackoff maxElapsed(final long duration, final TimeUnit unit) {
+        this.maxElapsed = unit.toMillis(duration);
+        return this;
+    }
+
+    public final long maxElapsed() {
+        return maxElapsed;
+    }
+
+    @Override
+    public long delay(final int attempt, final long elapsed, final Exception error) {
+        if (attempt > maxRetries) return -1;
+
+        long retryAfter = error.getRetryAfter();
+        boolean limited = error instanceof AccountException && error.getStatus() == 429 && retryAfter >= 0;
+        if (!limited && !RetryPolicy.isTransient(error)) return -1;
+
+        long ceiling = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 30));
+        long delay = ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+        delay = Math.max(delay, retryAfter);
+
+        if (elapsed + delay > maxElapsed) return -1;
+        return delay;
+    }
+}
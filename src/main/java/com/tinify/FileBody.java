@@ -0,0 +1,48 @@
+package com.tinify;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/* Streams a file from disk. The file is reopened on every write, so a retried
+   request sends it again without a copy of its contents on the heap. */
+final class FileBody extends Transport.Body {
+    private final Path path;
+    private final long length;
+
+    FileBody(final Path path) throws IOException {
+        this.path = path;
+        this.length = Files.size(path);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    @Override public String contentType() {
+        return null;
+    }
+
+    @Override public long contentLength() {
+        return length;
+    }
+
+    @Override public void writeTo(final OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < length) {
+                long transferred = channel.transferTo(position, length - position, target);
+                if (transferred <= 0) {
+                    throw new IOException("Unexpected end of file: " + path);
+                }
+                position += transferred;
+            }
+        }
+    }
+}
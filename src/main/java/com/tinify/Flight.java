@@ -0,0 +1,64 @@
+package com.tinify;
+
+import java.nio.file.Path;
+
+/* Emits JDK Flight Recorder events. The events are disabled by default and
+   have to be enabled in the recording settings, for example with
+   com.tinify.ApiCall#enabled=true. While they are disabled, or when the
+   runtime has no JFR, begin() returns null and the calls below do nothing.
+   Only this class touches FlightEvents, so a runtime without jdk.jfr never
+   loads it. */
+final class Flight {
+    private static final boolean AVAILABLE = available();
+
+    private Flight() {
+    }
+
+    private static boolean available() {
+        try {
+            return FlightEvents.available();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    static Object beginApiCall() {
+        return AVAILABLE ? FlightEvents.beginApiCall() : null;
+    }
+
+    static Object beginSource() {
+        return AVAILABLE ? FlightEvents.beginSource() : null;
+    }
+
+    static Object beginResult() {
+        return AVAILABLE ? FlightEvents.beginResult() : null;
+    }
+
+    static Object beginToFile() {
+        return AVAILABLE ? FlightEvents.beginToFile() : null;
+    }
+
+    static void apiCall(final Object event, final Client.Method method, final TinifyEventListener.Endpoint endpoint,
+                        final String url, final int status, final long bytesSent, final long bytesReceived,
+                        final int retries) {
+        if (event == null) return;
+        FlightEvents.apiCall(event, method.toString(), endpoint.toString(), url, status,
+                bytesSent, bytesReceived, retries);
+    }
+
+    static void source(final Object event, final String origin, final long bytes, final String location) {
+        if (event == null) return;
+        FlightEvents.source(event, origin, bytes, location);
+    }
+
+    static void result(final Object event, final String operation, final ResultMeta meta, final boolean cached) {
+        if (event == null) return;
+        FlightEvents.result(event, operation, meta.optionalWidth().orElse(-1), meta.optionalHeight().orElse(-1),
+                meta.optionalContentLength().orElse(-1), cached);
+    }
+
+    static void toFile(final Object event, final Path path, final long bytes) {
+        if (event == null) return;
+        FlightEvents.toFile(event, path.toString(), bytes);
+    }
+}
@@ -0,0 +1,189 @@
+package com.tinify;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/* The JFR event types. Only used through Flight. */
+final class FlightEvents {
+    @Name("com.tinify.ApiCall")
+    @Label("Tinify API Call")
+    @Description("An API request, including its retries")
+    @Category("Tinify")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ApiCall extends Event {
+        @Label("Method")
+        String method;
+
+        @Label("Endpoint")
+        String endpoint;
+
+        @Label("URL")
+        String url;
+
+        @Label("Status")
+        int status;
+
+        @Label("Bytes Sent")
+        @DataAmount
+        long bytesSent;
+
+        @Label("Bytes Received")
+        @DataAmount
+        long bytesReceived;
+
+        @Label("Retries")
+        int retries;
+    }
+
+    @Name("com.tinify.Source")
+    @Label("Tinify Source")
+    @Description("An image uploaded, or a URL submitted, for compression")
+    @Category("Tinify")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Source extends Event {
+        @Label("Origin")
+        String origin;
+
+        @Label("Input Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Location")
+        String location;
+    }
+
+    @Name("com.tinify.Result")
+    @Label("Tinify Result")
+    @Description("A compressed output retrieved or stored")
+    @Category("Tinify")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Result extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+
+        @Label("Output Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Cached")
+        boolean cached;
+    }
+
+    @Name("com.tinify.ToFile")
+    @Label("Tinify Result To File")
+    @Category("Tinify")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ToFile extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+    }
+
+    private static final EventType API_CALL = EventType.getEventType(ApiCall.class);
+    private static final EventType SOURCE = EventType.getEventType(Source.class);
+    private static final EventType RESULT = EventType.getEventType(Result.class);
+    private static final EventType TO_FILE = EventType.getEventType(ToFile.class);
+
+    private FlightEvents() {
+    }
+
+    static boolean available() {
+        return FlightRecorder.isAvailable();
+    }
+
+    static Object beginApiCall() {
+        if (!API_CALL.isEnabled()) return null;
+        ApiCall event = new ApiCall();
+        event.begin();
+        return event;
+    }
+
+    static Object beginSource() {
+        if (!SOURCE.isEnabled()) return null;
+        Source event = new Source();
+        event.begin();
+        return event;
+    }
+
+    static Object beginResult() {
+        if (!RESULT.isEnabled()) return null;
+        Result event = new Result();
+        event.begin();
+        return event;
+    }
+
+    static Object beginToFile() {
+        if (!TO_FILE.isEnabled()) return null;
+        ToFile event = new ToFile();
+        event.begin();
+        return event;
+    }
+
+    static void apiCall(final Object trace, final String method, final String endpoint, final String url,
+                        final int status, final long bytesSent, final long bytesReceived, final int retries) {
+        ApiCall event = (ApiCall) trace;
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.method = method;
+        event.endpoint = endpoint;
+        event.url = url;
+        event.status = status;
+        event.bytesSent = bytesSent;
+        event.bytesReceived = bytesReceived;
+        event.retries = retries;
+        event.commit();
+    }
+
+    static void source(final Object trace, final String origin, final long bytes, final String location) {
+        Source event = (Source) trace;
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.origin = origin;
+        event.bytes = bytes;
+        event.location = location;
+        event.commit();
+    }
+
+    static void result(final Object trace, final String operation, final int width, final int height,
+                       final long bytes, final boolean cached) {
+        Result event = (Result) trace;
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.operation = operation;
+        event.width = width;
+        event.height = height;
+        event.bytes = bytes;
+        event.cached = cached;
+        event.commit();
+    }
+
+    static void toFile(final Object trace, final String path, final long bytes) {
+        ToFile event = (ToFile) trace;
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.path = path;
+        event.bytes = bytes;
+        event.commit();
+    }
+}
@@ -0,0 +1,223 @@
+package com.tinify;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/* Hedges GET requests, which are idempotent: when a response has not arrived
+   after a delay taken from a percentile of recent response times, the same
+   request is sent again and the first successful response wins. The other
+   request is cancelled. Every hedgeable request adds maxExtraLoad to a budget
+   of at most maxBurst hedges, and every hedge takes one from it, so a slow
+   API does not get twice the load, nor a burst of hedges saved up while it
+   was fast. Response times are measured until the body has been read, as
+   that is when a transport completes. Streamed responses are never
+   hedged. Hedged requests run on the asynchronous dispatcher, even when sent
+   with the blocking API. One instance can be shared by several clients; the
+   response times and the budget are then shared as well. */
+public class Hedging {
+    private static final int WINDOW = 512;
+    private static final int MIN_SAMPLES = 20;
+    private static final int RECOMPUTE_EVERY = 32;
+
+    private double percentile = 95;
+    private long minDelay = TimeUnit.MILLISECONDS.toNanos(50);
+    private long initialDelay = TimeUnit.SECONDS.toNanos(1);
+    private double maxExtraLoad = 0.05;
+    private int maxBurst = 10;
+
+    private final long[] samples = new long[WINDOW];
+    private int sampleCount = 0;
+    private int nextSample = 0;
+    private volatile long delay = -1;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final Object budget = new Object();
+    private double tokens = 0;
+
+    /* The percentile of recent response times after which a request is hedged. */
+    public Hedging percentile(final double percentile) {
+        if (!(percentile > 0 && percentile < 100)) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        this.percentile = percentile;
+        return this;
+    }
+
+    public final double percentile() {
+        return percentile;
+    }
+
+    /* Requests are never hedged sooner than this. */
+    public Hedging minDelay(final long duration, final TimeUnit unit) {
+        this.minDelay = unit.toNanos(duration);
+        return this;
+    }
+
+    public final long minDelay() {
+        return TimeUnit.NANOSECONDS.toMillis(minDelay);
+    }
+
+    /* The delay until enough response times are known. */
+    public Hedging initialDelay(final long duration, final TimeUnit unit) {
+        this.initialDelay = unit.toNanos(duration);
+        return this;
+    }
+
+    public final long initialDelay() {
+        return TimeUnit.NANOSECONDS.toMillis(initialDelay);
+    }
+
+    /* Extra requests as a fraction of hedgeable requests; 0.05 allows one
+       hedge for every 20 requests. */
+    public Hedging maxExtraLoad(final double maxExtraLoad) {
+        if (!(maxExtraLoad >= 0 && maxExtraLoad <= 1)) {
+            throw new IllegalArgumentException("Extra load must be between 0 and 1");
+        }
+        this.maxExtraLoad = maxExtraLoad;
+        return this;
+    }
+
+    public final double maxExtraLoad() {
+        return maxExtraLoad;
+    }
+
+    /* The most hedges that can be sent in a row, however long the budget
+       has been saving up. */
+    public Hedging maxBurst(final int maxBurst) {
+        if (maxBurst < 1) {
+            throw new IllegalArgumentException("Burst must be at least 1");
+        }
+        this.maxBurst = maxBurst;
+        return this;
+    }
+
+    public final int maxBurst() {
+        return maxBurst;
+    }
+
+    public final long requests() {
+        return requests.get();
+    }
+
+    public final long hedges() {
+        return hedges.get();
+    }
+
+    /* The current hedging delay in milliseconds. */
+    public final long delay() {
+        return TimeUnit.NANOSECONDS.toMillis(delayNanos());
+    }
+
+    final long delayNanos() {
+        long current = delay;
+        return Math.max(minDelay, current < 0 ? initialDelay : current);
+    }
+
+    final synchronized void record(final long nanos) {
+        samples[nextSample] = nanos;
+        nextSample = (nextSample + 1) % WINDOW;
+        if (sampleCount < WINDOW) sampleCount++;
+
+        /* Sorting the window on every response would cost more than it saves. */
+        if (sampleCount >= MIN_SAMPLES && (delay < 0 || nextSample % RECOMPUTE_EVERY == 0)) {
+            long[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            delay = sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+        }
+    }
+
+    private void deposit() {
+        requests.incrementAndGet();
+        synchronized (budget) {
+            tokens = Math.min(maxBurst, tokens + maxExtraLoad);
+        }
+    }
+
+    private boolean tryHedge() {
+        synchronized (budget) {
+            if (tokens < 1) return false;
+            tokens -= 1;
+        }
+        hedges.incrementAndGet();
+        return true;
+    }
+
+    final Transport.Response execute(final Transport transport, final Transport.Request request,
+                                     final ScheduledExecutorService scheduler) throws IOException {
+        CompletableFuture<Transport.Response> future = executeAsync(transport, request, scheduler);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a response");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /* Completes with the first successful response. Otherwise it waits for
+       every request that was sent, and completes with an error response if
+       there was one, or fails. Cancelling the result cancels both requests. */
+    final CompletableFuture<Transport.Response> executeAsync(final Transport transport, final Transport.Request request,
+                                                             final ScheduledExecutorService scheduler) {
+        final long start = System.nanoTime();
+        final CompletableFuture<Transport.Response> result = new CompletableFuture<>();
+        final AtomicInteger sent = new AtomicInteger(1);
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicReference<Transport.Response> unsuccessful = new AtomicReference<>();
+        deposit();
+
+        final CompletableFuture<Transport.Response> primary = transport.executeAsync(request);
+        primary.whenComplete((response, error) ->
+                completed(result, response, error, start, sent, failed, unsuccessful));
+
+        final ScheduledFuture<?> timer = scheduler.schedule(() -> {
+            if (result.isDone() || !tryHedge()) return;
+            sent.incrementAndGet();
+            CompletableFuture<Transport.Response> hedge = transport.executeAsync(request);
+            result.whenComplete((response, error) -> hedge.cancel(true));
+            hedge.whenComplete((response, error) ->
+                    completed(result, response, error, start, sent, failed, unsuccessful));
+        }, delayNanos(), TimeUnit.NANOSECONDS);
+
+        result.whenComplete((response, error) -> {
+            timer.cancel(false);
+            primary.cancel(true);
+        });
+        return result;
+    }
+
+    /* Only successful response times are recorded, as errors are often fast. */
+    private void completed(final CompletableFuture<Transport.Response> result, final Transport.Response response,
+                           final Throwable error, final long start, final AtomicInteger sent,
+                           final AtomicInteger failed, final AtomicReference<Transport.Response> unsuccessful) {
+        if (error == null && response.status() >= 200 && response.status() < 300) {
+            if (result.complete(response)) record(System.nanoTime() - start);
+            return;
+        }
+
+        if (response != null) unsuccessful.compareAndSet(null, response);
+        if (failed.incrementAndGet() >= sent.get()) {
+            if (unsuccessful.get() != null) {
+                result.complete(unsuccessful.get());
+            } else {
+                result.completeExceptionally(error);
+            }
+        }
+    }
+}
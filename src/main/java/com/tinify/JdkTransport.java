@@ -0,0 +1,17 @@
+package com.tinify;
+
+/* The java.net.http transport needs Java 21. This is the version for older
+   runtimes; the multi-release jar carries the implementation in
+   META-INF/versions/21. */
+final class JdkTransport {
+    private JdkTransport() {
+    }
+
+    static boolean available() {
+        return false;
+    }
+
+    static Transport create(final String proxy, final ClientConfig config) {
+        throw new UnsupportedOperationException("The java.net.http transport requires Java 21 or later");
+    }
+}
@@ -0,0 +1,176 @@
+package com.tinify;
+
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/* Writes request bodies and reads error bodies without reflection. Options only
+   hold strings, numbers, booleans, lists, arrays and nested maps, so a small
+   writer covers them; error bodies are read with a streaming reader that only
+   looks at the two fields we use. */
+final class Json {
+    private static final String[] ESCAPES = new String[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = String.format("\\u%04x", c);
+        }
+        ESCAPES['"'] = "\\\"";
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES['\t'] = "\\t";
+        ESCAPES['\b'] = "\\b";
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\r'] = "\\r";
+        ESCAPES['\f'] = "\\f";
+    }
+
+    private Json() {
+    }
+
+    /* Like Gson, which this replaces, null map values are left out and
+       non-finite numbers are rejected. */
+    static void writeValue(final StringBuilder out, final Object value, final boolean sorted) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String) {
+            writeString(out, (String) value);
+        } else if (value instanceof Boolean) {
+            out.append(((Boolean) value).booleanValue());
+        } else if (value instanceof Number) {
+            writeNumber(out, (Number) value);
+        } else if (value instanceof Map) {
+            writeMap(out, (Map<?, ?>) value, sorted);
+        } else if (value instanceof Options) {
+            out.append(sorted ? ((Options) value).canonicalJson() : ((Options) value).toJson());
+        } else if (value instanceof Iterable) {
+            out.append('[');
+            boolean first = true;
+            for (Object element : (Iterable<?>) value) {
+                if (!first) out.append(',');
+                writeValue(out, element, sorted);
+                first = false;
+            }
+            out.append(']');
+        } else if (value.getClass().isArray()) {
+            out.append('[');
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) out.append(',');
+                writeValue(out, Array.get(value, i), sorted);
+            }
+            out.append(']');
+        } else if (value instanceof Enum) {
+            writeString(out, ((Enum<?>) value).name());
+        } else {
+            writeString(out, value.toString());
+        }
+    }
+
+    private static void writeMap(final StringBuilder out, final Map<?, ?> map, final boolean sorted) {
+        out.append('{');
+        boolean first = true;
+        if (sorted) {
+            String[] keys = new String[map.size()];
+            int i = 0;
+            for (Object key : map.keySet()) {
+                keys[i++] = String.valueOf(key);
+            }
+            Arrays.sort(keys);
+            for (String key : keys) {
+                Object value = map.get(key);
+                if (value == null) continue;
+                if (!first) out.append(',');
+                writeString(out, key);
+                out.append(':');
+                writeValue(out, value, true);
+                first = false;
+            }
+        } else {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (entry.getValue() == null) continue;
+                if (!first) out.append(',');
+                writeString(out, String.valueOf(entry.getKey()));
+                out.append(':');
+                writeValue(out, entry.getValue(), false);
+                first = false;
+            }
+        }
+        out.append('}');
+    }
+
+    private static void writeNumber(final StringBuilder out, final Number value) {
+        if (value instanceof Double || value instanceof Float) {
+            double number = value.doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                throw new IllegalArgumentException(number + " is not a valid JSON number");
+            }
+        }
+        out.append(value.toString());
+    }
+
+    static void writeString(final StringBuilder out, final String value) {
+        out.append('"');
+        int last = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String escape;
+            if (c < 128) {
+                escape = ESCAPES[c];
+                if (escape == null) continue;
+            } else if (c == 0x2028) {
+                escape = "\\u2028";
+            } else if (c == 0x2029) {
+                escape = "\\u2029";
+            } else {
+                continue;
+            }
+            out.append(value, last, i).append(escape);
+            last = i + 1;
+        }
+        out.append(value, last, length).append('"');
+    }
+
+    /* Returns null for a blank body or a literal null. */
+    static Exception.Data readError(final byte[] body) throws IOException {
+        if (body == null || isBlank(body)) return null;
+
+        JsonReader reader = new JsonReader(
+                new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+        reader.setStrictness(Strictness.LENIENT);
+
+        if (reader.peek() == JsonToken.NULL) return null;
+
+        Exception.Data data = new Exception.Data();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (name.equals("message")) {
+                data.setMessage(reader.nextString());
+            } else if (name.equals("error")) {
+                data.setError(reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return data;
+    }
+
+    private static boolean isBlank(final byte[] body) {
+        for (byte b : body) {
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,249 @@
+package com.tinify;
+
+import okhttp3.Authenticator;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Credentials;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.Route;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/* The default transport. Clients created from the same transport, such as
+   the clients of a ClientPool, share its connection pool and dispatcher.
+   Headers and bodies are converted to and from OkHttp types here. */
+final class OkHttpTransport implements Transport {
+    private final OkHttpClient client;
+
+    OkHttpTransport(final String proxy, final ClientConfig config) {
+        this(newHttpClient(proxy, config));
+    }
+
+    OkHttpTransport(final OkHttpClient client) {
+        this.client = client;
+    }
+
+    private static OkHttpClient newHttpClient(final String proxy, final ClientConfig config) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+
+        if (proxy != null) {
+            try {
+                URL url = new URL(proxy);
+                Proxy proxyAddress = createProxyAddress(url);
+                Authenticator proxyAuthenticator = createProxyAuthenticator(url);
+
+                if (proxyAddress != null) {
+                    builder.proxy(proxyAddress);
+                    if (proxyAuthenticator != null) {
+                        builder.proxyAuthenticator(proxyAuthenticator);
+                    }
+                }
+            } catch (java.lang.Exception e) {
+                throw new ConnectionException("Invalid proxy: " + e.getMessage(), e);
+            }
+        }
+
+        builder.sslSocketFactory(TLSContext.socketFactory, TLSContext.trustManager);
+        builder.connectTimeout(config.connectTimeout(), TimeUnit.MILLISECONDS);
+        builder.readTimeout(config.readTimeout(), TimeUnit.MILLISECONDS);
+        builder.writeTimeout(config.writeTimeout(), TimeUnit.MILLISECONDS);
+        builder.callTimeout(config.callTimeout(), TimeUnit.MILLISECONDS);
+
+        builder.connectionPool(new ConnectionPool(
+                config.maxIdleConnections(), config.keepAlive(), TimeUnit.MILLISECONDS));
+
+        /* OkHttp runs asynchronous calls on the dispatcher's executor. */
+        Dispatcher dispatcher = config.virtualThreads() && VirtualThreads.available()
+                ? new Dispatcher(VirtualThreads.newThreadPerTaskExecutor("Tinify dispatcher"))
+                : new Dispatcher();
+        dispatcher.setMaxRequests(config.maxRequests());
+        dispatcher.setMaxRequestsPerHost(config.maxRequestsPerHost());
+        builder.dispatcher(dispatcher);
+
+        if (config.http2()) {
+            builder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        } else {
+            builder.protocols(Collections.singletonList(Protocol.HTTP_1_1));
+        }
+
+        if (config.sendBufferSize() > 0 || config.receiveBufferSize() > 0) {
+            builder.socketFactory(new BufferedSocketFactory(config.sendBufferSize(), config.receiveBufferSize()));
+        }
+
+        /* Without a listener no OkHttp event listener is installed at all. */
+        if (config.eventListener() != TinifyEventListener.NONE) {
+            builder.eventListenerFactory(new EventRecorder.Factory(config.eventListener()));
+        }
+
+        return builder.build();
+    }
+
+    private static Proxy createProxyAddress(final URL proxy) {
+        if (proxy == null) return null;
+
+        String host = proxy.getHost();
+        int port = proxy.getPort();
+
+        if (port < 0) {
+            port = proxy.getDefaultPort();
+        }
+
+        return new Proxy(Proxy.Type.HTTP, new InetSocketAddress(host, port));
+    }
+
+    private static Authenticator createProxyAuthenticator(final URL proxy) {
+        if (proxy == null) return null;
+
+        String user = proxy.getUserInfo();
+        if (user == null) return null;
+
+        final String username, password;
+        int c = user.indexOf(':');
+        if (0 < c) {
+            username = user.substring(0, c);
+            password = user.substring(c + 1);
+        } else {
+            username = user;
+            password = null;
+        }
+
+        return new Authenticator() {
+            @Override public okhttp3.Request authenticate(Route route, okhttp3.Response response) throws IOException {
+                String credential = Credentials.basic(username, password);
+                return response.request().newBuilder().header("Proxy-Authorization", credential).build();
+            }
+        };
+    }
+
+    @Override public Transport.Response execute(final Transport.Request request) throws IOException {
+        okhttp3.Response response = newCall(request).execute();
+        int status = response.code();
+        if (request.stream() && status >= 200 && status < 300) {
+            return new Transport.Response(status, fromOkHttp(response.headers()), response.body().byteStream());
+        }
+
+        /* No need for try(Response response = ...): body().bytes() calls close(). */
+        return new Transport.Response(status, fromOkHttp(response.headers()), response.body().bytes());
+    }
+
+    @Override public CompletableFuture<Transport.Response> executeAsync(final Transport.Request request) {
+        final CompletableFuture<Transport.Response> future = new CompletableFuture<>();
+        final Call call = newCall(request);
+
+        future.whenComplete((response, error) -> {
+            if (future.isCancelled()) call.cancel();
+        });
+
+        call.enqueue(new Callback() {
+            @Override public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override public void onResponse(Call call, okhttp3.Response response) {
+                try {
+                    future.complete(new Transport.Response(
+                            response.code(), fromOkHttp(response.headers()), response.body().bytes()));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    @Override public int connectionCount() {
+        return client.connectionPool().connectionCount();
+    }
+
+    @Override public int idleConnectionCount() {
+        return client.connectionPool().idleConnectionCount();
+    }
+
+    @Override public int runningRequestCount() {
+        return client.dispatcher().runningCallsCount();
+    }
+
+    @Override public int queuedRequestCount() {
+        return client.dispatcher().queuedCallsCount();
+    }
+
+    /* The deadline replaces the call timeout when it is sooner. It also covers
+       reading a streamed body. */
+    private Call newCall(final Transport.Request request) {
+        Call call = client.newCall(newRequest(request));
+        long timeout = request.timeout();
+        if (timeout > 0 && (client.callTimeoutMillis() == 0 || timeout < client.callTimeoutMillis())) {
+            call.timeout().timeout(timeout, TimeUnit.MILLISECONDS);
+        }
+        return call;
+    }
+
+    private static okhttp3.Request newRequest(final Transport.Request request) {
+        return new okhttp3.Request.Builder()
+                .headers(toOkHttp(request.headers()))
+                .url(url(request.url()))
+                .method(request.method(), toOkHttp(request.body()))
+                .tag(EventRecorder.Tag.class, new EventRecorder.Tag(request.endpoint(), request.attempt()))
+                .build();
+    }
+
+    private static HttpUrl url(final String url) {
+        HttpUrl result = HttpUrl.parse(url);
+        if (result == null) throw new IllegalArgumentException("Invalid URL: " + url);
+        return result;
+    }
+
+    static okhttp3.Headers toOkHttp(final Transport.Headers headers) {
+        okhttp3.Headers.Builder builder = new okhttp3.Headers.Builder();
+        for (int i = 0, size = headers.size(); i < size; i++) {
+            builder.addUnsafeNonAscii(headers.name(i), headers.value(i));
+        }
+        return builder.build();
+    }
+
+    static Transport.Headers fromOkHttp(final okhttp3.Headers headers) {
+        Transport.Headers.Builder builder = new Transport.Headers.Builder();
+        for (int i = 0, size = headers.size(); i < size; i++) {
+            builder.add(headers.name(i), headers.value(i));
+        }
+        return builder.build();
+    }
+
+    private static RequestBody toOkHttp(final Transport.Body body) {
+        if (body == null) return null;
+
+        final MediaType contentType = body.contentType() == null ? null : MediaType.parse(body.contentType());
+        return new RequestBody() {
+            @Override public MediaType contentType() {
+                return contentType;
+            }
+
+            @Override public long contentLength() {
+                return body.contentLength();
+            }
+
+            @Override public boolean isOneShot() {
+                return body.isOneShot();
+            }
+
+            /* The stream writes to the sink's buffer, so it is not closed. */
+            @Override public void writeTo(final BufferedSink sink) throws IOException {
+                body.writeTo(sink.outputStream());
+            }
+        };
+    }
+}
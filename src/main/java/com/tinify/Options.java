@@ -1,37 +1,140 @@
 package com.tinify;
 
-import com.google.gson.Gson;
-
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
+/* Options are a chain of immutable entries, newest first. Copying options
+   shares the chain and adding an entry only allocates one node, so many
+   variants can be derived from the same base cheaply. Each node caches its
+   JSON, which a child node extends instead of serializing everything again.
+   Values are serialized when first needed, so mutable values such as arrays
+   should not be changed after they have been added. */
 public final class Options {
-    private Map<String, Object> options;
+    private static final class Node {
+        final String key;
+        final Object value;
+        final Node parent;
+        private String json;
+        private String canonicalJson;
+
+        Node(final String key, final Object value, final Node parent) {
+            this.key = key;
+            this.value = value;
+            this.parent = parent;
+        }
+
+        boolean contains(final String name) {
+            for (Node node = this; node != null; node = node.parent) {
+                if (node.key.equals(name)) return true;
+            }
+            return false;
+        }
+
+        String json() {
+            String current = json;
+            if (current != null) return current;
+
+            if (parent != null && parent.contains(key)) {
+                current = serialize(entries(), false);
+            } else {
+                String base = parent == null ? "{}" : parent.json();
+                if (value == null) {
+                    current = base;
+                } else {
+                    StringBuilder out = new StringBuilder(base.length() + key.length() + 16);
+                    out.append(base, 0, base.length() - 1);
+                    if (base.length() > 2) out.append(',');
+                    appendEntry(out, this, false);
+                    current = out.append('}').toString();
+                }
+            }
+            return json = current;
+        }
+
+        String canonicalJson() {
+            String current = canonicalJson;
+            if (current != null) return current;
+
+            List<Node> entries = entries();
+            entries.sort(Comparator.comparing(entry -> entry.key));
+            return canonicalJson = serialize(entries, true);
+        }
+
+        /* The newest entry of each key, in the order the keys were first added,
+           so replacing a value keeps its position. */
+        private List<Node> entries() {
+            List<Node> chain = new ArrayList<>();
+            for (Node node = this; node != null; node = node.parent) {
+                chain.add(node);
+            }
+
+            List<Node> entries = new ArrayList<>(chain.size());
+            for (int i = chain.size() - 1; i >= 0; i--) {
+                Node node = chain.get(i);
+                int index = 0;
+                while (index < entries.size() && !entries.get(index).key.equals(node.key)) index++;
+                if (index < entries.size()) {
+                    entries.set(index, node);
+                } else {
+                    entries.add(node);
+                }
+            }
+            return entries;
+        }
+
+        private static String serialize(final List<Node> entries, final boolean sorted) {
+            StringBuilder out = new StringBuilder(64).append('{');
+            boolean first = true;
+            for (Node entry : entries) {
+                if (entry.value == null) continue;
+                if (!first) out.append(',');
+                appendEntry(out, entry, sorted);
+                first = false;
+            }
+            return out.append('}').toString();
+        }
+
+        private static void appendEntry(final StringBuilder out, final Node entry, final boolean sorted) {
+            Json.writeString(out, entry.key);
+            out.append(':');
+            Json.writeValue(out, entry.value, sorted);
+        }
+    }
+
+    private Node head;
 
     public Options() {
-        this.options = new HashMap<>();
+        this.head = null;
     }
 
     public Options(Options options) {
-        this.options = new HashMap<>(options.options);
+        this.head = options.head;
     }
 
     public Options with(final String key, final Object value) {
-        this.options.put(key, value);
+        this.head = new Node(key, value, this.head);
         return this;
     }
 
     public Options with(final String key, final Options options) {
-        this.options.put(key, options.options);
-        return this;
+        return with(key, (Object) new Options(options));
     }
 
     public final String toJson() {
-        Gson gson = new Gson();
-        return gson.toJson(this.options);
+        return head == null ? "{}" : head.json();
+    }
+
+    /* JSON with keys in sorted order, so equal options always serialize equally. */
+    final String canonicalJson() {
+        return head == null ? "{}" : head.canonicalJson();
+    }
+
+    final boolean contains(final String key) {
+        return head != null && head.contains(key);
     }
 
     public boolean isEmpty() {
-        return this.options.isEmpty();
+        return this.head == null;
     }
 }
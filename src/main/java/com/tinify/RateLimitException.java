@@ -0,0 +1,15 @@
+package com.tinify;
+
+/* Thrown before a request is sent when the client side rate limiter would
+   have to wait longer than allowed. */
+public class RateLimitException extends AccountException {
+    private static final long serialVersionUID = 1L;
+
+    public RateLimitException() {
+        super();
+    }
+
+    public RateLimitException(final String message) {
+        super(message);
+    }
+}
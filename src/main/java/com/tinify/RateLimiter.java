@@ -0,0 +1,190 @@
+package com.tinify;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/* Limits the requests sent with each API key with a token bucket, and
+   optionally the number of uploads in flight. Requests wait for a token before
+   their body is sent, or fail with a RateLimitException if they would wait
+   longer than maxWait. A 429 response halves the rate of that key and waits
+   out Retry-After; successful responses raise it again gradually. One limiter
+   can be shared by clients for different keys. */
+public class RateLimiter {
+    private static final double MIN_RATE = 0.1;
+
+    private final double requestsPerSecond;
+    private int burst;
+    private int maxConcurrentUploads = 0;
+    private long maxWait = -1;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public RateLimiter(final double requestsPerSecond) {
+        if (!(requestsPerSecond > 0)) {
+            throw new IllegalArgumentException("Requests per second must be positive");
+        }
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = (int) Math.max(1, Math.ceil(requestsPerSecond));
+    }
+
+    public final double requestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    /* Number of requests that may be sent at once after a quiet period. */
+    public RateLimiter burst(final int burst) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("Burst must be at least 1");
+        }
+        this.burst = burst;
+        return this;
+    }
+
+    public final int burst() {
+        return burst;
+    }
+
+    /* 0 does not limit concurrent uploads. */
+    public RateLimiter maxConcurrentUploads(final int maxConcurrentUploads) {
+        this.maxConcurrentUploads = maxConcurrentUploads;
+        return this;
+    }
+
+    public final int maxConcurrentUploads() {
+        return maxConcurrentUploads;
+    }
+
+    /* 0 fails fast instead of waiting; by default requests wait as long as needed. */
+    public RateLimiter maxWait(final long duration, final TimeUnit unit) {
+        this.maxWait = unit.toMillis(duration);
+        return this;
+    }
+
+    public final long maxWait() {
+        return maxWait;
+    }
+
+    /* Current requests per second for a key, after adapting to 429 responses. */
+    public final double rate(final String key) {
+        Bucket bucket = buckets.get(key);
+        return bucket == null ? requestsPerSecond : bucket.rate();
+    }
+
+    Bucket bucket(final String key) {
+        return buckets.computeIfAbsent(key, ignored -> new Bucket());
+    }
+
+    final class Bucket {
+        private final AsyncPermits uploads = maxConcurrentUploads > 0 ? new AsyncPermits(maxConcurrentUploads) : null;
+        private double rate = requestsPerSecond;
+        private double tokens = burst;
+        private long last = System.nanoTime();
+
+        synchronized double rate() {
+            return rate;
+        }
+
+        /* Takes a token and returns the nanoseconds until it may be used. */
+        private synchronized long reserve() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - last) / 1e9 * rate);
+            last = now;
+
+            long delay = tokens >= 1 ? 0 : (long) ((1 - tokens) / rate * 1e9);
+            if (maxWait >= 0 && delay > TimeUnit.MILLISECONDS.toNanos(maxWait)) {
+                throw new RateLimitException("Rate limit exceeded: request would wait "
+                        + TimeUnit.NANOSECONDS.toMillis(delay) + " ms");
+            }
+            tokens -= 1;
+            return delay;
+        }
+
+        void acquire(final boolean upload) {
+            long delay = reserve();
+            if (delay > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RateLimitException("Interrupted while waiting for rate limit");
+                }
+            }
+            if (!upload || uploads == null) return;
+
+            CompletableFuture<Void> permit = uploads.acquire();
+            try {
+                if (maxWait >= 0) {
+                    permit.get(maxWait, TimeUnit.MILLISECONDS);
+                } else {
+                    permit.get();
+                }
+            } catch (TimeoutException | CancellationException | ExecutionException e) {
+                abandon(permit);
+                throw new RateLimitException("Rate limit exceeded: too many concurrent uploads");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandon(permit);
+                throw new RateLimitException("Interrupted while waiting for rate limit");
+            }
+        }
+
+        CompletableFuture<Void> acquireAsync(final boolean upload, final ScheduledExecutorService scheduler) {
+            final long delay;
+            try {
+                delay = reserve();
+            } catch (RateLimitException e) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return future;
+            }
+
+            CompletableFuture<Void> token = new CompletableFuture<>();
+            if (delay > 0) {
+                scheduler.schedule(() -> token.complete(null), delay, TimeUnit.NANOSECONDS);
+            } else {
+                token.complete(null);
+            }
+            if (!upload || uploads == null) return token;
+
+            return token.thenCompose(ignored -> {
+                final CompletableFuture<Void> permit = uploads.acquire();
+                if (maxWait >= 0 && !permit.isDone()) {
+                    /* A waiter that timed out is skipped when a permit is released. */
+                    scheduler.schedule(() -> permit.completeExceptionally(
+                            new RateLimitException("Rate limit exceeded: too many concurrent uploads")),
+                            maxWait, TimeUnit.MILLISECONDS);
+                }
+                return permit;
+            });
+        }
+
+        void release(final boolean upload) {
+            if (upload && uploads != null) uploads.release();
+        }
+
+        /* If the permit was granted while giving up, hand it back. */
+        private void abandon(final CompletableFuture<Void> permit) {
+            if (!permit.cancel(false) && !permit.isCompletedExceptionally()) {
+                uploads.release();
+            }
+        }
+
+        /* Additive increase, multiplicative decrease. */
+        synchronized void succeeded() {
+            rate = Math.min(requestsPerSecond, rate + requestsPerSecond / 20);
+        }
+
+        synchronized void limited(final long retryAfter) {
+            rate = Math.max(MIN_RATE, rate / 2);
+            tokens = Math.min(tokens, 0);
+            if (retryAfter > 0) {
+                tokens = Math.min(tokens, -retryAfter / 1000.0 * rate);
+            }
+        }
+    }
+}
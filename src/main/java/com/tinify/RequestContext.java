@@ -0,0 +1,106 @@
+package com.tinify;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/* A deadline for everything a thread sends to the API while the context is
+   open, including retries, the waits between them and chained operations:
+
+       try (RequestContext context = RequestContext.withTimeout(30, TimeUnit.SECONDS)) {
+           Tinify.fromFile("unoptimized.jpg").resize(options).toFile("thumbnail.jpg");
+       }
+
+   A request that is still running when the deadline passes is cancelled and
+   fails with a DeadlineExceededException. Asynchronous requests take the
+   context of the thread that starts them, and so do stages chained onto the
+   futures of Source and Result. Nested contexts never extend the deadline of
+   the context around them. */
+public final class RequestContext implements AutoCloseable {
+    private static final ThreadLocal<RequestContext> current = new ThreadLocal<>();
+
+    private final long deadline;
+    private final RequestContext previous;
+    private boolean closed = false;
+
+    private RequestContext(final long deadline, final RequestContext previous) {
+        this.deadline = deadline;
+        this.previous = previous;
+    }
+
+    public static RequestContext withTimeout(final long duration, final TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        RequestContext previous = current.get();
+        long deadline = System.nanoTime() + unit.toNanos(duration);
+        if (previous != null && previous.deadline - deadline < 0) {
+            deadline = previous.deadline;
+        }
+        RequestContext context = new RequestContext(deadline, previous);
+        current.set(context);
+        return context;
+    }
+
+    /* The innermost open context of this thread, or null. */
+    public static RequestContext current() {
+        return current.get();
+    }
+
+    /* Milliseconds until the deadline, or 0 once it has passed. */
+    public final long remaining() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(remainingNanos()));
+    }
+
+    public final boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    final long remainingNanos() {
+        return deadline - System.nanoTime();
+    }
+
+    /* Completes the returned future with the current context open, so stages
+       chained onto it, like thenCompose(Source::resultAsync), send their
+       requests under the same deadline on whatever thread completes it.
+       Cancelling the returned future cancels the given one. */
+    static <T> CompletableFuture<T> propagate(final CompletableFuture<T> future) {
+        final RequestContext context = current.get();
+        if (context == null) return future;
+
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        future.whenComplete((value, error) -> {
+            RequestContext previous = current.get();
+            current.set(context);
+            try {
+                if (error == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(error);
+                }
+            } finally {
+                if (previous == null) {
+                    current.remove();
+                } else {
+                    current.set(previous);
+                }
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) future.cancel(true);
+        });
+        return result;
+    }
+
+    /* Restores the context that was open before this one. */
+    @Override public void close() {
+        if (closed) return;
+        closed = true;
+        if (current.get() == this) {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.tinify;
+
+import java.io.IOException;
+
+/* Timings of a single HTTP request in nanoseconds, or -1 for phases that did
+   not happen. DNS, connect and TLS only happen when no pooled connection
+   could be reused; connect includes the TLS handshake. Waiting is the time
+   from the end of the request until the response headers arrived, which is
+   mostly server processing. */
+public final class RequestEvent {
+    private final TinifyEventListener.Endpoint endpoint;
+    private final String method;
+    private final String url;
+    private final int attempt;
+    private final int status;
+    private final IOException failure;
+    private final long dns;
+    private final long connect;
+    private final long tls;
+    private final long requestBody;
+    private final long waiting;
+    private final long responseBody;
+    private final long total;
+    private final long bytesSent;
+    private final long bytesReceived;
+
+    RequestEvent(final TinifyEventListener.Endpoint endpoint, final String method, final String url,
+                 final int attempt, final int status, final IOException failure,
+                 final long dns, final long connect, final long tls, final long requestBody,
+                 final long waiting, final long responseBody, final long total,
+                 final long bytesSent, final long bytesReceived) {
+        this.endpoint = endpoint;
+        this.method = method;
+        this.url = url;
+        this.attempt = attempt;
+        this.status = status;
+        this.failure = failure;
+        this.dns = dns;
+        this.connect = connect;
+        this.tls = tls;
+        this.requestBody = requestBody;
+        this.waiting = waiting;
+        this.responseBody = responseBody;
+        this.total = total;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+    }
+
+    public TinifyEventListener.Endpoint endpoint() {
+        return endpoint;
+    }
+
+    public String method() {
+        return method;
+    }
+
+    public String url() {
+        return url;
+    }
+
+    /* 1 for the first attempt, 2 for the first retry, and so on. */
+    public int attempt() {
+        return attempt;
+    }
+
+    /* 0 if no response was received. */
+    public int status() {
+        return status;
+    }
+
+    public IOException failure() {
+        return failure;
+    }
+
+    public long dnsNanos() {
+        return dns;
+    }
+
+    public long connectNanos() {
+        return connect;
+    }
+
+    public long tlsNanos() {
+        return tls;
+    }
+
+    public long requestBodyNanos() {
+        return requestBody;
+    }
+
+    public long waitingNanos() {
+        return waiting;
+    }
+
+    public long responseBodyNanos() {
+        return responseBody;
+    }
+
+    public long totalNanos() {
+        return total;
+    }
+
+    /* Body bytes only; headers are not counted. */
+    public long bytesSent() {
+        return bytesSent;
+    }
+
+    public long bytesReceived() {
+        return bytesReceived;
+    }
+
+    @Override
+    public String toString() {
+        return endpoint + " " + method + " " + url + " attempt=" + attempt + " status=" + status
+                + " dns=" + dns + " connect=" + connect + " tls=" + tls
+                + " requestBody=" + requestBody + " waiting=" + waiting + " responseBody=" + responseBody
+                + " total=" + total + " sent=" + bytesSent + " received=" + bytesReceived;
+    }
+}
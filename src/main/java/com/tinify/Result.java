@@ -1,36 +1,179 @@
 package com.tinify;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import okhttp3.Headers;
+import java.nio.file.StandardOpenOption;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
 
-public class Result extends ResultMeta {
-    private final byte[] data;
+public class Result extends ResultMeta implements Closeable {
+    private byte[] data;
+    private final InputStream stream;
 
-    public Result(final Headers meta, final byte[] data) {
+    public Result(final okhttp3.Headers meta, final byte[] data) {
+        this(OkHttpTransport.fromOkHttp(meta), data, null);
+    }
+
+    Result(final Transport.Headers meta, final byte[] data) {
+        this(meta, data, null);
+    }
+
+    Result(final Transport.Headers meta, final byte[] data, final InputStream stream) {
         super(meta);
         this.data = data;
+        this.stream = stream;
     }
 
     public void toFile(final String path) throws IOException {
-        Files.write(Paths.get(path), toBuffer());
+        toFile(Paths.get(path));
+    }
+
+    public void toFile(final Path path) throws IOException {
+        Object event = Flight.beginToFile();
+        if (!isStreaming()) {
+            byte[] buffer = toBuffer();
+            Files.write(path, buffer);
+            Flight.toFile(event, path, buffer.length);
+            return;
+        }
+
+        long position = 0;
+        try (FileChannel file = FileChannel.open(path,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ReadableByteChannel source = channel();
+            long transferred;
+            while ((transferred = file.transferFrom(source, position, Long.MAX_VALUE)) > 0) {
+                position += transferred;
+            }
+        } finally {
+            close();
+        }
+        Flight.toFile(event, path, position);
+    }
+
+    public CompletableFuture<Void> toFileAsync(final String path) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(Paths.get(path),
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(toBuffer());
+        channel.write(buffer, 0, null, new CompletionHandler<Integer, Void>() {
+            @Override public void completed(Integer written, Void attachment) {
+                if (buffer.hasRemaining()) {
+                    channel.write(buffer, buffer.position(), null, this);
+                } else {
+                    close(null);
+                }
+            }
+
+            @Override public void failed(Throwable error, Void attachment) {
+                close(error);
+            }
+
+            private void close(Throwable error) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    if (error == null) error = e;
+                }
+                if (error == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(error);
+                }
+            }
+        });
+        return RequestContext.propagate(future);
+    }
+
+    public final InputStream inputStream() {
+        if (isStreaming()) return stream;
+        return data == null ? null : new ByteArrayInputStream(data);
+    }
+
+    public final ReadableByteChannel channel() {
+        InputStream input = inputStream();
+        return input == null ? null : Channels.newChannel(input);
+    }
+
+    public final long transferTo(final OutputStream output) throws IOException {
+        if (!isStreaming()) {
+            if (data == null) return 0;
+            output.write(data);
+            return data.length;
+        }
+
+        try {
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        } finally {
+            close();
+        }
     }
 
     public final byte[] toBuffer() {
+        if (isStreaming()) {
+            /* Streaming results are read into memory on first use. */
+            try {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                transferTo(output);
+                data = output.toByteArray();
+            } catch (IOException e) {
+                throw new ConnectionException("Error while reading response: " + e.getMessage(), e);
+            }
+        }
         return data;
     }
 
+    private boolean isStreaming() {
+        return data == null && stream != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
     public final Integer size() {
-        String value = meta.get("content-length");
-        return (value == null) ? null : Integer.parseInt(value);
+        return contentLength();
+    }
+
+    public final OptionalInt optionalSize() {
+        return optionalContentLength();
     }
 
     public final String mediaType() {
-        return meta.get("content-type");
+        return contentType();
     }
 
     public final String extension() {
-        return meta.get("content-type") == null ? null : meta.get("content-type").replaceFirst(".*/(.*)", "$1");
+        return contentSubtype();
     }
 }
@@ -0,0 +1,341 @@
+package com.tinify;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/* An on-disk cache of compressed outputs, keyed by the SHA-256 of the input
+   and the commands applied to it. Entries are written to a temporary file and
+   moved into place atomically, so several JVMs can share one directory. The
+   least recently used entries are evicted when the cache exceeds its size. */
+public class ResultCache {
+    private static final String LOCK_FILE = ".lock";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final long TEMPORARY_EXPIRY = TimeUnit.HOURS.toMillis(1);
+
+    private final Path directory;
+    private final long maxSize;
+    private final AtomicLong size = new AtomicLong();
+    private final ReentrantLock evicting = new ReentrantLock();
+
+    public ResultCache(final Path directory, final long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        Files.createDirectories(directory);
+        size.set(usage());
+    }
+
+    public final Path directory() {
+        return directory;
+    }
+
+    public final long maxSize() {
+        return maxSize;
+    }
+
+    /* Approximate number of bytes in use; entries written by other processes
+       are accounted for at the next eviction. */
+    public final long size() {
+        return size.get();
+    }
+
+    static String key(final String digest, final Options commands) {
+        String json = commands == null ? "{}" : commands.canonicalJson();
+        return SourceInput.hex(SourceInput.sha256().digest(
+                (digest + "\n" + json).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /* Returns a streaming result for the entry, or null if there is none. */
+    Result get(final String key) {
+        Path entry = entry(key);
+        InputStream input;
+        try {
+            input = new BufferedInputStream(Files.newInputStream(entry));
+        } catch (IOException e) {
+            return null;
+        }
+
+        try {
+            Transport.Headers headers = readHeaders(input);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Result(headers, null, input);
+        } catch (IOException e) {
+            try {
+                input.close();
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    void put(final String key, final Transport.Headers headers, final InputStream data) throws IOException {
+        Path entry = entry(key);
+        Files.createDirectories(entry.getParent());
+        Path temporary = Files.createTempFile(entry.getParent(), key, TEMPORARY_SUFFIX);
+        try {
+            try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+                writeHeaders(output, headers);
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = data.read(chunk)) != -1) {
+                    output.write(chunk, 0, read);
+                }
+            } finally {
+                data.close();
+            }
+            commit(temporary, entry);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /* Returns a stream over data that writes it into the entry for key as it
+       is read. The entry is only added once data has been read to the end;
+       a failing write stops caching but not the reader. */
+    InputStream tee(final String key, final Transport.Headers headers, final InputStream data) {
+        Path entry = entry(key);
+        Path temporary;
+        OutputStream output;
+        try {
+            Files.createDirectories(entry.getParent());
+            temporary = Files.createTempFile(entry.getParent(), key, TEMPORARY_SUFFIX);
+        } catch (IOException e) {
+            return data;
+        }
+        try {
+            output = new BufferedOutputStream(Files.newOutputStream(temporary));
+            writeHeaders(output, headers);
+        } catch (IOException e) {
+            discard(temporary);
+            return data;
+        }
+        return new Tee(data, output, temporary, entry);
+    }
+
+    private void commit(final Path temporary, final Path entry) throws IOException {
+        long written = Files.size(temporary);
+        long replaced = entry.toFile().length();
+        try {
+            Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (size.addAndGet(written - replaced) > maxSize) {
+            evict(entry);
+        }
+    }
+
+    private void evict(final Path written) throws IOException {
+        /* One eviction per JVM at a time; the file lock excludes other JVMs. */
+        if (!evicting.tryLock()) return;
+        try (FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                sweep(written);
+            } finally {
+                lock.release();
+            }
+        } finally {
+            evicting.unlock();
+        }
+    }
+
+    /* Never evicts the entry just written, so it can still be read back. */
+    private void sweep(final Path written) throws IOException {
+        List<Path> entries = new ArrayList<>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        try (Stream<Path> paths = Files.walk(directory, 2)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                String name = path.getFileName().toString();
+                if (!Files.isRegularFile(path) || name.equals(LOCK_FILE)) continue;
+                if (name.endsWith(TEMPORARY_SUFFIX)) {
+                    /* Left behind by a process that did not finish writing. */
+                    if (now - path.toFile().lastModified() > TEMPORARY_EXPIRY) {
+                        Files.deleteIfExists(path);
+                    }
+                    continue;
+                }
+                entries.add(path);
+                total += path.toFile().length();
+            }
+        }
+
+        entries.sort(Comparator.comparing(ResultCache::lastModified));
+        long target = maxSize - maxSize / 10;
+        for (Path entry : entries) {
+            if (total <= target) break;
+            if (entry.equals(written)) continue;
+            long length = entry.toFile().length();
+            try {
+                Files.deleteIfExists(entry);
+                total -= length;
+            } catch (IOException e) {
+                /* Still open by a reader on a platform that does not allow this. */
+            }
+        }
+        size.set(total);
+    }
+
+    private static void discard(final Path temporary) {
+        try {
+            Files.deleteIfExists(temporary);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private long usage() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory, 2)) {
+            return paths.filter(ResultCache::isEntry).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    /* The lock and files still being written are not part of the cache size. */
+    private static boolean isEntry(final Path path) {
+        String name = path.getFileName().toString();
+        return Files.isRegularFile(path) && !name.equals(LOCK_FILE) && !name.endsWith(TEMPORARY_SUFFIX);
+    }
+
+    private Path entry(final String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private static FileTime lastModified(final Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).lastModifiedTime();
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void writeHeaders(final OutputStream output, final Transport.Headers headers) throws IOException {
+        for (int i = 0; i < headers.size(); i++) {
+            output.write((headers.name(i) + ": " + headers.value(i) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        output.write('\n');
+    }
+
+    private static Transport.Headers readHeaders(final InputStream input) throws IOException {
+        Transport.Headers.Builder headers = new Transport.Headers.Builder();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            int next = input.read();
+            if (next == -1) {
+                throw new IOException("Truncated cache entry");
+            } else if (next != '\n') {
+                line.write(next);
+            } else if (line.size() == 0) {
+                return headers.build();
+            } else {
+                String header = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                int separator = header.indexOf(": ");
+                if (separator < 0) {
+                    throw new IOException("Invalid cache entry");
+                }
+                headers.add(header.substring(0, separator), header.substring(separator + 2));
+                line.reset();
+            }
+        }
+    }
+
+    private final class Tee extends FilterInputStream {
+        private final Path temporary;
+        private final Path entry;
+        private OutputStream output;
+
+        Tee(final InputStream data, final OutputStream output, final Path temporary, final Path entry) {
+            super(data);
+            this.output = output;
+            this.temporary = temporary;
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int next = super.read();
+            if (next == -1) {
+                finish(true);
+            } else if (output != null) {
+                try {
+                    output.write(next);
+                } catch (IOException e) {
+                    finish(false);
+                }
+            }
+            return next;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read == -1) {
+                finish(true);
+            } else if (output != null) {
+                try {
+                    output.write(buffer, offset, read);
+                } catch (IOException e) {
+                    finish(false);
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long count) throws IOException {
+            /* Skipped bytes would be missing from the entry. */
+            finish(false);
+            return super.skip(count);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                finish(false);
+            }
+        }
+
+        private void finish(final boolean complete) {
+            if (output == null) return;
+            try {
+                output.close();
+                if (complete) {
+                    commit(temporary, entry);
+                }
+            } catch (IOException ignored) {
+            } finally {
+                output = null;
+                discard(temporary);
+            }
+        }
+    }
+}
@@ -1,25 +1,119 @@
 package com.tinify;
 
-import okhttp3.Headers;
+import java.util.OptionalInt;
 
+/* The headers we report on are parsed once, when the result is created, so
+   the accessors below do not look up or parse headers on every call. A
+   header with a value that is not a number is treated as absent. OkHttp
+   headers are only built when asked for through headers(). */
 public class ResultMeta {
-    protected final Headers meta;
+    protected final Transport.Headers meta;
+    private volatile okhttp3.Headers headers;
 
-    public ResultMeta(final Headers meta) {
+    private final OptionalInt width;
+    private final OptionalInt height;
+    private final OptionalInt contentLength;
+    private final Integer boxedWidth;
+    private final Integer boxedHeight;
+    private final Integer boxedContentLength;
+    private final String location;
+    private final String contentType;
+    private final String contentSubtype;
+
+    public ResultMeta(final okhttp3.Headers meta) {
+        this(OkHttpTransport.fromOkHttp(meta));
+    }
+
+    ResultMeta(final Transport.Headers meta) {
         this.meta = meta;
+
+        String width = null;
+        String height = null;
+        String contentLength = null;
+        String location = null;
+        String contentType = null;
+
+        /* The last value of a header wins, like Headers.get(). */
+        for (int i = 0, size = meta.size(); i < size; i++) {
+            String name = meta.name(i);
+            if (name.equalsIgnoreCase("image-width")) {
+                width = meta.value(i);
+            } else if (name.equalsIgnoreCase("image-height")) {
+                height = meta.value(i);
+            } else if (name.equalsIgnoreCase("content-length")) {
+                contentLength = meta.value(i);
+            } else if (name.equalsIgnoreCase("location")) {
+                location = meta.value(i);
+            } else if (name.equalsIgnoreCase("content-type")) {
+                contentType = meta.value(i);
+            }
+        }
+
+        this.width = parse(width);
+        this.height = parse(height);
+        this.contentLength = parse(contentLength);
+        this.boxedWidth = box(this.width);
+        this.boxedHeight = box(this.height);
+        this.boxedContentLength = box(this.contentLength);
+        this.location = location;
+        this.contentType = contentType;
+        this.contentSubtype = contentType == null ? null : contentType.substring(contentType.lastIndexOf('/') + 1);
     }
 
     public final Integer width() {
-        String value = meta.get("image-width");
-        return (value == null) ? null : Integer.parseInt(value);
+        return boxedWidth;
     }
 
     public final Integer height() {
-        String value = meta.get("image-height");
-        return (value == null) ? null : Integer.parseInt(value);
+        return boxedHeight;
+    }
+
+    public final OptionalInt optionalWidth() {
+        return width;
+    }
+
+    public final OptionalInt optionalHeight() {
+        return height;
     }
 
     public final String location() {
-        return meta.get("location");
+        return location;
+    }
+
+    public final okhttp3.Headers headers() {
+        okhttp3.Headers result = headers;
+        if (result == null) {
+            headers = result = OkHttpTransport.toOkHttp(meta);
+        }
+        return result;
+    }
+
+    final Integer contentLength() {
+        return boxedContentLength;
+    }
+
+    final OptionalInt optionalContentLength() {
+        return contentLength;
+    }
+
+    final String contentType() {
+        return contentType;
+    }
+
+    final String contentSubtype() {
+        return contentSubtype;
+    }
+
+    private static OptionalInt parse(final String value) {
+        if (value == null) return OptionalInt.empty();
+        try {
+            return OptionalInt.of(Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return OptionalInt.empty();
+        }
+    }
+
+    private static Integer box(final OptionalInt value) {
+        return value.isPresent() ? Integer.valueOf(value.getAsInt()) : null;
     }
 }
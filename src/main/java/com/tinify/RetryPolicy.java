@@ -0,0 +1,33 @@
+package com.tinify;
+
+import java.util.concurrent.TimeUnit;
+
+/* Decides whether a failed request is sent again, and after how long. The
+   delay is given the number of attempts made so far, the milliseconds since
+   the first attempt and the error the request would fail with. A negative
+   delay gives up and fails with that error. Requests with a body that cannot
+   be sent twice are never retried. */
+@FunctionalInterface
+public interface RetryPolicy {
+    long delay(int attempt, long elapsed, Exception error);
+
+    static RetryPolicy none() {
+        return (attempt, elapsed, error) -> -1;
+    }
+
+    /* Retries failed connections and server errors after a fixed delay. The
+       default is one retry after Client.RETRY_DELAY milliseconds. */
+    static RetryPolicy fixed(final int retries, final long delay, final TimeUnit unit) {
+        final long millis = unit.toMillis(delay);
+        return (attempt, elapsed, error) -> attempt <= retries && isTransient(error) ? millis : -1;
+    }
+
+    static ExponentialBackoff exponential() {
+        return new ExponentialBackoff();
+    }
+
+    /* Failures that may succeed when the same request is sent again. */
+    static boolean isTransient(final Exception error) {
+        return error instanceof ConnectionException || error instanceof ServerException;
+    }
+}
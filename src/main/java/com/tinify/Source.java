@@ -1,72 +1,390 @@
 package com.tinify;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 public class Source {
     private String url;
     private Options commands;
+    private SourceInput input;
+    private Client client;
 
     public static Source fromFile(final String path) throws IOException {
-        return fromBuffer(Files.readAllBytes(Paths.get(path)));
+        Object event = Flight.beginSource();
+        Source source;
+        if (Tinify.cache() != null || Tinify.sourceRegistry() != null) {
+            source = fromInput(new SourceInput(Paths.get(path)));
+        } else {
+            Client client = Tinify.client();
+            Client.Response response = client.request(Client.Method.POST, "/shrink", Paths.get(path));
+            source = new Source(response.headers.get("location"), new Options(), null, client);
+        }
+        if (event != null) {
+            Flight.source(event, "file", Files.size(Paths.get(path)), source.url);
+        }
+        return source;
+    }
+
+    public static Source fromStream(final InputStream stream, final long length) {
+        Object event = Flight.beginSource();
+        Client client = Tinify.client();
+        Client.Response response = client.request(Client.Method.POST, "/shrink", stream, length);
+        Source source = new Source(response.headers.get("location"), new Options(), null, client);
+        Flight.source(event, "stream", length, source.url);
+        return source;
     }
 
     public static Source fromBuffer(final byte[] buffer) {
-        Client.Response response = Tinify.client().request(Client.Method.POST, "/shrink", buffer);
-        return new Source(response.headers.get("location"), new Options());
+        Object event = Flight.beginSource();
+        Source source;
+        if (Tinify.cache() != null || Tinify.sourceRegistry() != null) {
+            try {
+                source = fromInput(new SourceInput(buffer));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        } else {
+            Client client = Tinify.client();
+            Client.Response response = client.request(Client.Method.POST, "/shrink", buffer);
+            source = new Source(response.headers.get("location"), new Options(), null, client);
+        }
+        Flight.source(event, "buffer", buffer.length, source.url);
+        return source;
     }
 
     public static Source fromUrl(final String url) {
+        Object event = Flight.beginSource();
+        Options body = new Options().with("source", new Options().with("url", url));
+        Client client = Tinify.client();
+        Client.Response response = client.request(Client.Method.POST, "/shrink", body);
+        Source source = new Source(response.headers.get("location"), new Options(), null, client);
+        Flight.source(event, "url", 0, source.url);
+        return source;
+    }
+
+    public static CompletableFuture<Source> fromFileAsync(final String path) {
+        final Client client;
+        CompletableFuture<Client.Response> response;
+        try {
+            if (Tinify.cache() != null) {
+                return CompletableFuture.completedFuture(fromInput(new SourceInput(Paths.get(path))));
+            } else if (Tinify.sourceRegistry() != null) {
+                return fromInputAsync(new SourceInput(Paths.get(path)));
+            }
+            client = Tinify.client();
+            response = client.requestAsync(Client.Method.POST, "/shrink", Paths.get(path));
+        } catch (IOException | RuntimeException e) {
+            return failed(e);
+        }
+        return RequestContext.propagate(
+                response.thenApply(res -> new Source(res.headers.get("location"), new Options(), null, client)));
+    }
+
+    public static CompletableFuture<Source> fromStreamAsync(final InputStream stream, final long length) {
+        final Client client;
+        try {
+            client = Tinify.client();
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+        return RequestContext.propagate(client.requestAsync(Client.Method.POST, "/shrink", stream, length)
+                .thenApply(response -> new Source(response.headers.get("location"), new Options(), null, client)));
+    }
+
+    public static CompletableFuture<Source> fromBufferAsync(final byte[] buffer) {
+        final Client client;
+        try {
+            if (Tinify.cache() != null) {
+                return CompletableFuture.completedFuture(fromBuffer(buffer));
+            } else if (Tinify.sourceRegistry() != null) {
+                return fromInputAsync(new SourceInput(buffer));
+            }
+            client = Tinify.client();
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+        return RequestContext.propagate(client.requestAsync(Client.Method.POST, "/shrink", buffer)
+                .thenApply(response -> new Source(response.headers.get("location"), new Options(), null, client)));
+    }
+
+    public static CompletableFuture<Source> fromUrlAsync(final String url) {
         Options body = new Options().with("source", new Options().with("url", url));
-        Client.Response response = Tinify.client().request(Client.Method.POST, "/shrink", body);
-        return new Source(response.headers.get("location"), new Options());
+        final Client client;
+        try {
+            client = Tinify.client();
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+        return RequestContext.propagate(client.requestAsync(Client.Method.POST, "/shrink", body)
+                .thenApply(response -> new Source(response.headers.get("location"), new Options(), null, client)));
+    }
+
+    /* With a result cache the upload is deferred until an output is not cached.
+       Otherwise the input is uploaded now, unless a live location is registered. */
+    private static Source fromInput(final SourceInput input) throws IOException {
+        /* Fails early if the input cannot be read. */
+        input.digest();
+        if (Tinify.cache() == null) {
+            input.location();
+        }
+        return new Source(null, new Options(), input, null);
+    }
+
+    private static CompletableFuture<Source> fromInputAsync(final SourceInput input) {
+        return RequestContext.propagate(
+                input.locationAsync().thenApply(location -> new Source(null, new Options(), input, null)));
     }
 
     public Source(final String url, final Options commands) {
+        this(url, commands, null, null);
+    }
+
+    /* A source keeps using the client it was uploaded with, which matters when
+       clients come from a ClientPool with different keys. */
+    Source(final String url, final Options commands, final SourceInput input, final Client client) {
         this.url = url;
         this.commands = commands;
+        this.input = input;
+        this.client = client;
     }
 
     public final Source preserve(final String... options) {
-        return new Source(url, new Options(commands).with("preserve", options));
+        return new Source(url, new Options(commands).with("preserve", options), input, client);
     }
 
     public final Source resize(final Options options) {
-        return new Source(url, new Options(commands).with("resize", options));
+        return new Source(url, new Options(commands).with("resize", options), input, client);
     }
 
     public final Source convert(final Options options) {
-        return new Source(url, new Options(commands).with("convert", options));
+        return new Source(url, new Options(commands).with("convert", options), input, client);
     }
 
     public final Source transform(final Options options) {
-        return new Source(url, new Options(commands).with("transform", options));
+        return new Source(url, new Options(commands).with("transform", options), input, client);
     }
 
     public final ResultMeta store(final Options options) {
-        Options params = new Options(commands).with("store", options);
-        Client.Response response = Tinify.client().request(Client.Method.POST, url, params);
-        return new ResultMeta(response.headers);
+        Object event = Flight.beginResult();
+        final Options params = new Options(commands).with("store", options);
+        Client.Response response;
+        try {
+            response = withLocation(location -> client().request(Client.Method.POST, location, params));
+        } catch (IOException e) {
+            throw new ConnectionException("Error while connecting: " + e.getMessage(), e);
+        }
+        ResultMeta meta = new ResultMeta(response.headers);
+        Flight.result(event, "store", meta, false);
+        return meta;
     }
 
     public final Result result() throws IOException {
-        Client.Response response;
-        if (commands == null || commands.isEmpty()) {
-            response = Tinify.client().request(Client.Method.GET, url);
-        } else {
-            response = Tinify.client().request(Client.Method.POST, url, commands);
+        Object event = Flight.beginResult();
+        String key = cacheKey();
+        if (key != null) {
+            Result cached = Tinify.cache().get(key);
+            if (cached != null) {
+                cached.toBuffer();
+                Flight.result(event, "result", cached, true);
+                return cached;
+            }
+        }
+
+        Client.Response response = withLocation(location -> {
+            if (commands == null || commands.isEmpty()) {
+                return client().request(Client.Method.GET, location);
+            } else {
+                return client().request(Client.Method.POST, location, commands);
+            }
+        });
+
+        if (key != null) {
+            cache(key, response);
         }
 
         /* No need for try(Response response = ...): body().bytes() calls close(). */
-        return new Result(response.headers, response.body);
+        Result result = new Result(response.headers, response.body);
+        Flight.result(event, "result", result, false);
+        return result;
+    }
+
+    public final CompletableFuture<ResultMeta> storeAsync(final Options options) {
+        final Object event = Flight.beginResult();
+        final Options params = new Options(commands).with("store", options);
+        return RequestContext.propagate(
+                withLocationAsync(location -> client().requestAsync(Client.Method.POST, location, params))
+                        .thenApply(response -> {
+                            ResultMeta meta = new ResultMeta(response.headers);
+                            Flight.result(event, "store", meta, false);
+                            return meta;
+                        }));
+    }
+
+    public final Result resultStream() throws IOException {
+        return resultStream("resultStream");
+    }
+
+    /* The event of a streamed result ends when the body starts to arrive. */
+    private Result resultStream(final String operation) throws IOException {
+        Object event = Flight.beginResult();
+        String key = cacheKey();
+        if (key != null) {
+            Result cached = Tinify.cache().get(key);
+            if (cached != null) {
+                Flight.result(event, operation, cached, true);
+                return cached;
+            }
+        }
+
+        Client.Response response = withLocation(location -> {
+            if (commands == null || commands.isEmpty()) {
+                return client().requestStream(Client.Method.GET, location);
+            } else {
+                return client().requestStream(Client.Method.POST, location, commands);
+            }
+        });
+
+        Result result;
+        if (key != null) {
+            /* Fill the cache as the result is read; best effort like result(). */
+            result = new Result(response.headers, null, Tinify.cache().tee(key, response.headers, response.stream));
+        } else {
+            result = new Result(response.headers, null, response.stream);
+        }
+        Flight.result(event, operation, result, false);
+        return result;
+    }
+
+    public final CompletableFuture<Result> resultAsync() {
+        final Object event = Flight.beginResult();
+        final String key;
+        try {
+            key = cacheKey();
+        } catch (IOException e) {
+            return failed(e);
+        }
+
+        if (key != null) {
+            Result cached = Tinify.cache().get(key);
+            if (cached != null) {
+                cached.toBuffer();
+                Flight.result(event, "result", cached, true);
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        return RequestContext.propagate(withLocationAsync(location -> {
+            if (commands == null || commands.isEmpty()) {
+                return client().requestAsync(Client.Method.GET, location);
+            } else {
+                return client().requestAsync(Client.Method.POST, location, commands);
+            }
+        }).thenApply(response -> {
+            if (key != null) {
+                cache(key, response);
+            }
+            Result result = new Result(response.headers, response.body);
+            Flight.result(event, "result", result, false);
+            return result;
+        }));
     }
 
     public void toFile(final String path) throws IOException {
-        result().toFile(path);
+        try (Result result = resultStream("toFile")) {
+            result.toFile(path);
+        }
     }
 
     public final byte[] toBuffer() throws IOException {
         return result().toBuffer();
     }
+
+    public CompletableFuture<Void> toFileAsync(final String path) {
+        return resultAsync().thenCompose(result -> result.toFileAsync(path));
+    }
+
+    public final CompletableFuture<byte[]> toBufferAsync() {
+        return resultAsync().thenApply(Result::toBuffer);
+    }
+
+    private Client client() {
+        if (input != null) return input.client();
+        return client != null ? client : Tinify.client();
+    }
+
+    private interface LocationRequest {
+        Client.Response send(String location) throws IOException;
+    }
+
+    /* Sends a request to the location of this source. If the location of an
+       uploaded input has expired, the input is uploaded again and the request
+       is repeated once. */
+    private Client.Response withLocation(final LocationRequest request) throws IOException {
+        if (url != null || input == null) {
+            return request.send(url);
+        }
+
+        String location = input.location();
+        try {
+            return request.send(location);
+        } catch (ClientException e) {
+            if (e.status != 404) throw e;
+            input.expire(location);
+            return request.send(input.location());
+        }
+    }
+
+    private CompletableFuture<Client.Response> withLocationAsync(
+            final Function<String, CompletableFuture<Client.Response>> request) {
+        if (url != null || input == null) {
+            try {
+                return request.apply(url);
+            } catch (RuntimeException e) {
+                /* Such as a missing API key. */
+                return failed(e);
+            }
+        }
+
+        /* The request and a repeated upload are sent from the threads that
+           complete the upload, so they need the context passed on. */
+        return RequestContext.propagate(input.locationAsync()).thenCompose(location ->
+                RequestContext.propagate(request.apply(location)).handle((response, error) -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof ClientException && ((ClientException) cause).status == 404) {
+                        input.expire(location);
+                        return RequestContext.propagate(input.locationAsync()).thenCompose(request);
+                    }
+                    return Source.<Client.Response>failed(cause);
+                })
+                .thenCompose(Function.identity()));
+    }
+
+    private String cacheKey() throws IOException {
+        ResultCache cache = Tinify.cache();
+        if (cache == null || input == null) return null;
+        return ResultCache.key(input.digest(), commands);
+    }
+
+    /* Caching is best effort; an unwritable cache should not fail the request. */
+    private static void cache(final String key, final Client.Response response) {
+        try {
+            Tinify.cache().put(key, response.headers, new ByteArrayInputStream(response.body));
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(final Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
 }
@@ -0,0 +1,194 @@
+package com.tinify;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+
+/* The local input of a source, kept so that it can be identified by its digest
+   and uploaded when (and only when) its location is needed. It is uploaded
+   again if its location has expired on the server. */
+final class SourceInput {
+    private final Path file;
+    private final byte[] buffer;
+    private volatile String digest;
+    private volatile String location;
+    private CompletableFuture<String> uploading;
+    private volatile Client client;
+
+    SourceInput(final Path file) {
+        this.file = file;
+        this.buffer = null;
+    }
+
+    SourceInput(final byte[] buffer) {
+        this.file = null;
+        this.buffer = buffer;
+    }
+
+    /* The client is chosen on first use, so a cached result needs no key. */
+    Client client() {
+        Client current = client;
+        if (current == null) {
+            client = current = Tinify.client();
+        }
+        return current;
+    }
+
+    /* Hex encoded SHA-256 of the input. */
+    String digest() throws IOException {
+        String current = digest;
+        if (current == null) {
+            MessageDigest sha256 = sha256();
+            if (file != null) {
+                try (InputStream input = Files.newInputStream(file)) {
+                    byte[] chunk = new byte[64 * 1024];
+                    int read;
+                    while ((read = input.read(chunk)) != -1) {
+                        sha256.update(chunk, 0, read);
+                    }
+                }
+            } else {
+                sha256.update(buffer);
+            }
+            digest = current = hex(sha256.digest());
+        }
+        return current;
+    }
+
+    /* Concurrent callers may both upload; the input is the same, so either
+       location is valid. Asynchronous callers share an upload in flight. */
+    String location() {
+        String current = location;
+        if (current == null) {
+            current = registered();
+        }
+        if (current == null) {
+            Client.Response response;
+            if (file != null) {
+                try {
+                    response = client().request(Client.Method.POST, "/shrink", file);
+                } catch (IOException e) {
+                    throw new Exception("Error while reading input: " + e.getMessage(), e);
+                }
+            } else {
+                response = client().request(Client.Method.POST, "/shrink", buffer);
+            }
+            location = current = register(response.headers.get("location"));
+        }
+        return current;
+    }
+
+    CompletableFuture<String> locationAsync() {
+        String current = location;
+        if (current == null) {
+            try {
+                current = registered();
+            } catch (Exception e) {
+                CompletableFuture<String> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return future;
+            }
+        }
+        if (current != null) {
+            return CompletableFuture.completedFuture(current);
+        }
+
+        synchronized (this) {
+            if (uploading != null) {
+                return uploading;
+            }
+            if (location != null) {
+                return CompletableFuture.completedFuture(location);
+            }
+
+            CompletableFuture<Client.Response> response;
+            if (file != null) {
+                try {
+                    response = client().requestAsync(Client.Method.POST, "/shrink", file);
+                } catch (IOException e) {
+                    CompletableFuture<String> future = new CompletableFuture<>();
+                    future.completeExceptionally(e);
+                    return future;
+                }
+            } else {
+                response = client().requestAsync(Client.Method.POST, "/shrink", buffer);
+            }
+
+            final CompletableFuture<String> upload =
+                    response.thenApply(res -> location = register(res.headers.get("location")));
+            uploading = upload;
+            upload.whenComplete((uploaded, error) -> {
+                synchronized (this) {
+                    if (uploading == upload) uploading = null;
+                }
+            });
+            return upload;
+        }
+    }
+
+    /* Forgets a location that the server reported as not found. */
+    void expire(final String expired) {
+        if (expired.equals(location)) {
+            location = null;
+        }
+
+        SourceRegistry registry = Tinify.sourceRegistry();
+        if (registry != null && digest != null) {
+            registry.expire(digest + ":" + client().key(), expired);
+        }
+    }
+
+    private String registered() {
+        SourceRegistry registry = Tinify.sourceRegistry();
+        if (registry == null) return null;
+
+        String current = registry.get(registryKey());
+        if (current != null) {
+            location = current;
+        }
+        return current;
+    }
+
+    private String register(final String issued) {
+        SourceRegistry registry = Tinify.sourceRegistry();
+        if (registry != null && issued != null) {
+            registry.put(registryKey(), issued);
+        }
+        return issued;
+    }
+
+    /* Locations belong to the account that uploaded them. */
+    private String registryKey() {
+        return digestOrFail() + ":" + client().key();
+    }
+
+    private String digestOrFail() {
+        try {
+            return digest();
+        } catch (IOException e) {
+            throw new Exception("Error while reading input: " + e.getMessage(), e);
+        }
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is not available.", e);
+        }
+    }
+
+    static String hex(final byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = digits[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,98 @@
+package com.tinify;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/* Remembers the location of recently uploaded inputs by their digest, so that
+   uploading the same bytes again reuses the source that is still live on the
+   server. Locations are only reused until their time to live runs out. */
+public class SourceRegistry {
+    private static final class Entry {
+        final String location;
+        final long issued;
+
+        Entry(final String location, final long issued) {
+            this.location = location;
+            this.issued = issued;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long ttl;
+    private final int capacity;
+
+    public SourceRegistry(final long ttl, final TimeUnit unit) {
+        this(ttl, unit, 10000);
+    }
+
+    public SourceRegistry(final long ttl, final TimeUnit unit, final int capacity) {
+        this.ttl = unit.toMillis(ttl);
+        this.capacity = capacity;
+    }
+
+    /* Milliseconds a location is reused after it was issued. */
+    public final long ttl() {
+        return ttl;
+    }
+
+    public final int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    String get(final String digest) {
+        Entry entry = entries.get(digest);
+        if (entry == null) return null;
+        if (isExpired(entry, System.currentTimeMillis())) {
+            entries.remove(digest, entry);
+            return null;
+        }
+        return entry.location;
+    }
+
+    void put(final String digest, final String location) {
+        long now = System.currentTimeMillis();
+        entries.put(digest, new Entry(location, now));
+        if (entries.size() > capacity) {
+            purge(now);
+        }
+    }
+
+    /* Forgets a location the server no longer knows about. */
+    void expire(final String digest, final String location) {
+        Entry entry = entries.get(digest);
+        if (entry != null && entry.location.equals(location)) {
+            entries.remove(digest, entry);
+        }
+    }
+
+    private void purge(final long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (isExpired(iterator.next(), now)) iterator.remove();
+        }
+
+        /* Still full of live entries: drop the oldest ones. */
+        while (entries.size() > capacity) {
+            String oldest = null;
+            long issued = Long.MAX_VALUE;
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (entry.getValue().issued < issued) {
+                    oldest = entry.getKey();
+                    issued = entry.getValue().issued;
+                }
+            }
+            if (oldest == null) break;
+            entries.remove(oldest);
+        }
+    }
+
+    private boolean isExpired(final Entry entry, final long now) {
+        return now - entry.issued >= ttl;
+    }
+}
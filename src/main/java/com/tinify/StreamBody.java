@@ -0,0 +1,52 @@
+package com.tinify;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* Streams from a caller supplied input stream. A stream can only be read once,
+   so a request with this body can only be retried if it was never written. */
+final class StreamBody extends Transport.Body {
+    private final InputStream stream;
+    private final long length;
+    private final AtomicBoolean consumed = new AtomicBoolean();
+
+    StreamBody(final InputStream stream, final long length) {
+        this.stream = stream;
+        this.length = length;
+    }
+
+    @Override public String contentType() {
+        return null;
+    }
+
+    @Override public long contentLength() {
+        return length;
+    }
+
+    @Override public boolean isOneShot() {
+        return true;
+    }
+
+    @Override public void writeTo(final OutputStream out) throws IOException {
+        InputStream in = open();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    /* Hands out the stream once, for transports that send it themselves. */
+    InputStream open() throws IOException {
+        if (!consumed.compareAndSet(false, true)) {
+            throw new IOException("Input stream has already been sent");
+        }
+        return stream;
+    }
+
+    boolean isConsumed() {
+        return consumed.get();
+    }
+}
@@ -17,6 +17,7 @@ import java.util.Collection;
 public class TLSContext {
     public static SSLSocketFactory socketFactory;
     public static X509TrustManager trustManager;
+    public static javax.net.ssl.SSLContext sslContext;
 
     static {
         try {
@@ -40,6 +41,7 @@ public class TLSContext {
             javax.net.ssl.SSLContext sslContext = javax.net.ssl.SSLContext.getInstance("TLS");
             sslContext.init(keyManagers, trustManagers, null);
 
+            TLSContext.sslContext = sslContext;
             socketFactory = sslContext.getSocketFactory();
             trustManager = (X509TrustManager) trustManagers[0];
 
@@ -1,28 +1,46 @@
 package com.tinify;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Tinify {
     private static String key;
     private static String appIdentifier;
     private static String proxy;
-    private static int compressionCount = 0;
-    private static Client client;
+    private static ClientConfig config = new ClientConfig();
+    private static ResultCache cache;
+    private static SourceRegistry sourceRegistry;
+    private static ClientPool clientPool;
+    private static volatile int compressionCount = 0;
+    private static volatile Client client;
+    private static final ReentrantLock lock = new ReentrantLock();
 
     public static Client client() {
+        ClientPool pool = clientPool;
+        if (pool != null) {
+            return pool.client();
+        }
         if (key == null) {
             throw new AccountException("Provide an API key with Tinify.setKey(...)");
         }
-        if (client != null) {
-            return client;
-        } else {
-            synchronized (Tinify.class) {
-                if (client == null) {
-                    client = new Client(key, appIdentifier, proxy);
-                }
+        Client current = client;
+        if (current != null) {
+            return current;
+        }
+
+        /* A lock rather than synchronized, so virtual threads that wait for the
+           client do not pin their carrier thread. */
+        lock.lock();
+        try {
+            if (client == null) {
+                client = new Client(key, appIdentifier, proxy, config);
             }
             return client;
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -41,6 +59,24 @@ public class Tinify {
         client = null;
     }
 
+    public static void setConfig(final ClientConfig config) {
+        Tinify.config = config == null ? new ClientConfig() : config;
+        client = null;
+    }
+
+    /* With a pool, every new source picks a key from it and setKey is not needed. */
+    public static void setClientPool(final ClientPool pool) {
+        Tinify.clientPool = pool;
+    }
+
+    public static void setCache(final ResultCache cache) {
+        Tinify.cache = cache;
+    }
+
+    public static void setSourceRegistry(final SourceRegistry registry) {
+        Tinify.sourceRegistry = registry;
+    }
+
     public static Source fromFile(final String path) throws IOException {
         return Source.fromFile(path);
     }
@@ -49,10 +85,30 @@ public class Tinify {
         return Source.fromBuffer(buffer);
     }
 
+    public static Source fromStream(final InputStream stream, final long length) {
+        return Source.fromStream(stream, length);
+    }
+
     public static Source fromUrl(final String url) {
         return Source.fromUrl(url);
     }
 
+    public static CompletableFuture<Source> fromFileAsync(final String path) {
+        return Source.fromFileAsync(path);
+    }
+
+    public static CompletableFuture<Source> fromBufferAsync(final byte[] buffer) {
+        return Source.fromBufferAsync(buffer);
+    }
+
+    public static CompletableFuture<Source> fromStreamAsync(final InputStream stream, final long length) {
+        return Source.fromStreamAsync(stream, length);
+    }
+
+    public static CompletableFuture<Source> fromUrlAsync(final String url) {
+        return Source.fromUrlAsync(url);
+    }
+
     public static boolean validate() {
         try {
             client().request(Client.Method.POST, "/shrink");
@@ -77,10 +133,28 @@ public class Tinify {
         return appIdentifier;
     }
 
+    public static ClientConfig config() {
+        return config;
+    }
+
+    public static ClientPool clientPool() {
+        return clientPool;
+    }
+
+    public static ResultCache cache() {
+        return cache;
+    }
+
+    public static SourceRegistry sourceRegistry() {
+        return sourceRegistry;
+    }
+
     public static void setCompressionCount(final int count) {
         compressionCount = count;
     }
 
+    /* The count last reported to any client. Use Client.compressionCount() or
+       ClientPool.compressionCounts() for the count of a specific key. */
     public static int compressionCount() {
         return compressionCount;
     }
@@ -0,0 +1,372 @@
+package com.tinify;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/* Compresses many files with a bounded number of images in flight. Items run on
+   the asynchronous API, so they share the connection pool of Tinify.client()
+   instead of occupying a thread each. Uploads and output downloads are
+   separate stages with their own limits, so the upload of one image overlaps
+   the download of another. */
+public class TinifyBatch {
+    public enum Status {
+        SUCCEEDED,
+        FAILED,
+        SKIPPED
+    }
+
+    public static class Item {
+        private final Path input;
+        private final Path output;
+        private final Status status;
+        private final Throwable error;
+        private final long inputSize;
+        private final long outputSize;
+        private final long duration;
+
+        Item(final Path input, final Path output, final Status status, final Throwable error,
+             final long inputSize, final long outputSize, final long duration) {
+            this.input = input;
+            this.output = output;
+            this.status = status;
+            this.error = error;
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            this.duration = duration;
+        }
+
+        public final Path input() {
+            return input;
+        }
+
+        public final Path output() {
+            return output;
+        }
+
+        public final Status status() {
+            return status;
+        }
+
+        public final Throwable error() {
+            return error;
+        }
+
+        public final long inputSize() {
+            return inputSize;
+        }
+
+        public final long outputSize() {
+            return outputSize;
+        }
+
+        /* Milliseconds from the start of the upload until the output was written. */
+        public final long duration() {
+            return duration;
+        }
+    }
+
+    public static class Report {
+        private final List<Item> items;
+        private final long elapsed;
+
+        Report(final List<Item> items, final long elapsed) {
+            this.items = Collections.unmodifiableList(items);
+            this.elapsed = elapsed;
+        }
+
+        public final List<Item> items() {
+            return items;
+        }
+
+        public final List<Item> failures() {
+            return items.stream().filter(item -> item.status() == Status.FAILED).collect(Collectors.toList());
+        }
+
+        public final int succeeded() {
+            return count(Status.SUCCEEDED);
+        }
+
+        public final int failed() {
+            return count(Status.FAILED);
+        }
+
+        public final int skipped() {
+            return count(Status.SKIPPED);
+        }
+
+        public final long inputBytes() {
+            return items.stream().filter(item -> item.status() == Status.SUCCEEDED).mapToLong(Item::inputSize).sum();
+        }
+
+        public final long outputBytes() {
+            return items.stream().filter(item -> item.status() == Status.SUCCEEDED).mapToLong(Item::outputSize).sum();
+        }
+
+        /* Wall clock milliseconds for the whole batch. */
+        public final long elapsed() {
+            return elapsed;
+        }
+
+        public final double imagesPerSecond() {
+            return elapsed == 0 ? 0 : succeeded() * 1000.0 / elapsed;
+        }
+
+        public final double inputBytesPerSecond() {
+            return elapsed == 0 ? 0 : inputBytes() * 1000.0 / elapsed;
+        }
+
+        private int count(final Status status) {
+            return (int) items.stream().filter(item -> item.status() == status).count();
+        }
+    }
+
+    private int parallelism = 4;
+    private int uploads = 0;
+    private int downloads = 0;
+    private boolean failFast = false;
+    private Function<Source, Source> commands = Function.identity();
+    private Function<Path, Path> target;
+    private Path targetDirectory;
+
+    public TinifyBatch parallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /* Limits the number of concurrent uploads. Defaults to the parallelism. */
+    public TinifyBatch uploads(final int uploads) {
+        if (uploads < 1) {
+            throw new IllegalArgumentException("Uploads must be at least 1");
+        }
+        this.uploads = uploads;
+        return this;
+    }
+
+    /* Limits the number of concurrent output downloads. Defaults to the parallelism. */
+    public TinifyBatch downloads(final int downloads) {
+        if (downloads < 1) {
+            throw new IllegalArgumentException("Downloads must be at least 1");
+        }
+        this.downloads = downloads;
+        return this;
+    }
+
+    public TinifyBatch failFast(final boolean failFast) {
+        this.failFast = failFast;
+        return this;
+    }
+
+    public TinifyBatch commands(final Function<Source, Source> commands) {
+        this.commands = this.commands.andThen(commands);
+        return this;
+    }
+
+    public TinifyBatch preserve(final String... options) {
+        return commands(source -> source.preserve(options));
+    }
+
+    public TinifyBatch resize(final Options options) {
+        return commands(source -> source.resize(options));
+    }
+
+    public TinifyBatch convert(final Options options) {
+        return commands(source -> source.convert(options));
+    }
+
+    public TinifyBatch transform(final Options options) {
+        return commands(source -> source.transform(options));
+    }
+
+    /* Writes each output to the path returned for its input. A batch needs a
+       target, or inPlace() to replace the inputs. Outputs are written to a
+       temporary file and then moved over the target, so a failed write never
+       leaves a truncated file behind. Two inputs with the same output fail. */
+    public TinifyBatch target(final Function<Path, Path> target) {
+        this.target = target;
+        this.targetDirectory = null;
+        return this;
+    }
+
+    /* Keeps the path of each input relative to the directory that is run, so
+       files from subdirectories of a glob do not overwrite each other. */
+    public TinifyBatch target(final Path directory) {
+        this.target = null;
+        this.targetDirectory = directory;
+        return this;
+    }
+
+    /* Overwrites each input with its output. */
+    public TinifyBatch inPlace() {
+        return target(Function.identity());
+    }
+
+    public Report run(final Path directory) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return run(directory, paths.filter(Files::isRegularFile).sorted());
+        }
+    }
+
+    public Report run(final Path directory, final String glob) throws IOException {
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return run(directory, paths.filter(Files::isRegularFile).filter(path -> matcher.matches(directory.relativize(path))).sorted());
+        }
+    }
+
+    public Report run(final Stream<Path> paths) {
+        return run(null, paths);
+    }
+
+    private Report run(final Path root, final Stream<Path> paths) {
+        if (target == null && targetDirectory == null) {
+            throw new IllegalStateException("No target; use target() or inPlace() to replace the inputs");
+        }
+
+        final long start = System.currentTimeMillis();
+        final Semaphore permits = new Semaphore(parallelism);
+        final AsyncPermits uploadPermits = new AsyncPermits(uploads > 0 ? uploads : parallelism);
+        final AsyncPermits downloadPermits = new AsyncPermits(downloads > 0 ? downloads : parallelism);
+        final AtomicBoolean aborted = new AtomicBoolean();
+        final List<CompletableFuture<Item>> items = new ArrayList<>();
+        final Set<Path> outputs = new HashSet<>();
+
+        Iterator<Path> iterator = paths.iterator();
+        while (iterator.hasNext()) {
+            Path input = iterator.next();
+            if (!aborted.get()) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    aborted.set(true);
+                }
+            }
+
+            if (aborted.get()) {
+                items.add(CompletableFuture.completedFuture(
+                        new Item(input, null, Status.SKIPPED, null, 0, 0, 0)));
+                continue;
+            }
+
+            Path output = output(root, input);
+            if (!outputs.add(output.toAbsolutePath().normalize())) {
+                items.add(CompletableFuture.completedFuture(new Item(input, output, Status.FAILED,
+                        new FileAlreadyExistsException(output.toString(), null, "Output of another input"), 0, 0, 0)));
+                if (failFast) aborted.set(true);
+                permits.release();
+                continue;
+            }
+
+            items.add(process(input, output, uploadPermits, downloadPermits).whenComplete((item, error) -> {
+                if (failFast && (item == null || item.status() == Status.FAILED)) {
+                    aborted.set(true);
+                }
+                permits.release();
+            }));
+        }
+
+        List<Item> results = new ArrayList<>(items.size());
+        for (CompletableFuture<Item> item : items) {
+            results.add(item.join());
+        }
+        return new Report(results, System.currentTimeMillis() - start);
+    }
+
+    private Path output(final Path root, final Path input) {
+        if (targetDirectory == null) return target.apply(input);
+        Path relative = root == null ? input.getFileName() : root.relativize(input);
+        return targetDirectory.resolve(relative.toString());
+    }
+
+    private CompletableFuture<Item> process(final Path input, final Path output,
+                                            final AsyncPermits uploadPermits, final AsyncPermits downloadPermits) {
+        final long start = System.currentTimeMillis();
+
+        final long inputSize;
+        try {
+            inputSize = Files.size(input);
+        } catch (IOException e) {
+            return CompletableFuture.completedFuture(
+                    new Item(input, output, Status.FAILED, e, 0, 0, System.currentTimeMillis() - start));
+        }
+
+        CompletableFuture<Source> source = uploadPermits.run(() -> Source.fromFileAsync(input.toString()));
+        CompletableFuture<Integer> written = source.thenApply(commands).thenCompose(commanded ->
+                downloadPermits.run(() -> commanded.resultAsync().thenCompose(result ->
+                        write(result, output).thenApply(ignored -> result.toBuffer().length))));
+
+        return written.handle((outputSize, error) -> {
+            long duration = System.currentTimeMillis() - start;
+            if (error != null) {
+                return new Item(input, output, Status.FAILED, unwrap(error), inputSize, 0, duration);
+            }
+            return new Item(input, output, Status.SUCCEEDED, null, inputSize, outputSize, duration);
+        });
+    }
+
+    private static CompletableFuture<Void> write(final Result result, final Path output) {
+        final Path temp;
+        try {
+            Path parent = output.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            temp = Files.createTempFile(parent, "." + output.getFileName(), ".tmp");
+        } catch (IOException e) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        return result.toFileAsync(temp.toString()).thenRun(() -> {
+            try {
+                move(temp, output);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    /* Best effort; the error of the write is reported instead. */
+                }
+            }
+        });
+    }
+
+    private static void move(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Throwable unwrap(final Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+}
@@ -0,0 +1,19 @@
+package com.tinify;
+
+/* Receives the timings of every HTTP request a client sends, including each
+   retry as a separate request. Set it with ClientConfig.eventListener(...).
+   It is called on an OkHttp thread when the request has finished, so it
+   should return quickly. */
+@FunctionalInterface
+public interface TinifyEventListener {
+    enum Endpoint {
+        SHRINK,
+        OUTPUT,
+        STORE
+    }
+
+    /* The default: no OkHttp event listener is installed and nothing is measured. */
+    TinifyEventListener NONE = event -> { };
+
+    void requestFinished(RequestEvent event);
+}
@@ -0,0 +1,230 @@
+package com.tinify;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/* Sends the HTTP requests of a Client. Transport.okhttp() is the default.
+   Transport.jdk() uses java.net.http instead and needs Java 21 or later.
+   Retries, rate limiting and error handling stay in Client, so a transport
+   only performs single exchanges. Headers and bodies are types of this
+   interface, so a transport does not depend on the HTTP library of another. */
+public interface Transport {
+    /* Sends the request. For a streaming request with a 2xx status the body is
+       returned as a stream that the caller closes; otherwise it is read fully. */
+    Response execute(Request request) throws IOException;
+
+    /* Reads the body fully. Cancelling the returned future aborts the request. */
+    CompletableFuture<Response> executeAsync(Request request);
+
+    default int connectionCount() {
+        return 0;
+    }
+
+    default int idleConnectionCount() {
+        return 0;
+    }
+
+    default int runningRequestCount() {
+        return 0;
+    }
+
+    default int queuedRequestCount() {
+        return 0;
+    }
+
+    interface Factory {
+        Transport create(String proxy, ClientConfig config);
+    }
+
+    static Factory okhttp() {
+        return OkHttpTransport::new;
+    }
+
+    /* Requires Java 21 or later; on older runtimes create() throws
+       UnsupportedOperationException. */
+    static Factory jdk() {
+        return JdkTransport::create;
+    }
+
+    final class Request {
+        private final String method;
+        private final String url;
+        private final Headers headers;
+        private final Body body;
+        private final boolean stream;
+        private final TinifyEventListener.Endpoint endpoint;
+        private final int attempt;
+        private final RequestContext context;
+
+        Request(final String method, final String url, final Headers headers, final Body body,
+                final boolean stream, final TinifyEventListener.Endpoint endpoint, final int attempt) {
+            this(method, url, headers, body, stream, endpoint, attempt, null);
+        }
+
+        Request(final String method, final String url, final Headers headers, final Body body,
+                final boolean stream, final TinifyEventListener.Endpoint endpoint, final int attempt,
+                final RequestContext context) {
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.body = body;
+            this.stream = stream;
+            this.endpoint = endpoint;
+            this.attempt = attempt;
+            this.context = context;
+        }
+
+        public final String method() {
+            return method;
+        }
+
+        public final String url() {
+            return url;
+        }
+
+        public final Headers headers() {
+            return headers;
+        }
+
+        /* Null for requests without a body. */
+        public final Body body() {
+            return body;
+        }
+
+        public final boolean stream() {
+            return stream;
+        }
+
+        public final TinifyEventListener.Endpoint endpoint() {
+            return endpoint;
+        }
+
+        /* Starts at 1 and counts retries of the same request. */
+        public final int attempt() {
+            return attempt;
+        }
+
+        /* Milliseconds left until the deadline of the request context, at
+           least 1, or 0 without a deadline. Transports read it just before
+           sending and abort the exchange once it has passed. Rounded up, so
+           the exchange is never aborted before the deadline has passed. */
+        public final long timeout() {
+            if (context == null) return 0;
+            long nanos = context.remainingNanos();
+            return Math.max(1, (nanos + 999_999) / 1_000_000);
+        }
+    }
+
+    final class Response {
+        private final int status;
+        private final Headers headers;
+        private final byte[] body;
+        private final InputStream stream;
+
+        public Response(final int status, final Headers headers, final byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.stream = null;
+        }
+
+        public Response(final int status, final Headers headers, final InputStream stream) {
+            this.status = status;
+            this.headers = headers;
+            this.body = null;
+            this.stream = stream;
+        }
+
+        public final int status() {
+            return status;
+        }
+
+        public final Headers headers() {
+            return headers;
+        }
+
+        public final byte[] body() {
+            return body;
+        }
+
+        public final InputStream stream() {
+            return stream;
+        }
+    }
+
+    /* Header names are case insensitive and keep the order they were added in. */
+    final class Headers {
+        private final String[] namesAndValues;
+
+        private Headers(final String[] namesAndValues) {
+            this.namesAndValues = namesAndValues;
+        }
+
+        public static Headers of(final String... namesAndValues) {
+            if (namesAndValues.length % 2 != 0) {
+                throw new IllegalArgumentException("Expected alternating header names and values");
+            }
+            for (String value : namesAndValues) {
+                if (value == null) throw new IllegalArgumentException("Headers cannot be null");
+            }
+            return new Headers(namesAndValues.clone());
+        }
+
+        public final int size() {
+            return namesAndValues.length / 2;
+        }
+
+        public final String name(final int index) {
+            return namesAndValues[index * 2];
+        }
+
+        public final String value(final int index) {
+            return namesAndValues[index * 2 + 1];
+        }
+
+        /* The last value of the header, or null without one. */
+        public final String get(final String name) {
+            for (int i = namesAndValues.length - 2; i >= 0; i -= 2) {
+                if (name.equalsIgnoreCase(namesAndValues[i])) return namesAndValues[i + 1];
+            }
+            return null;
+        }
+
+        public static final class Builder {
+            private final List<String> namesAndValues = new ArrayList<>();
+
+            public Builder add(final String name, final String value) {
+                if (name == null || value == null) throw new IllegalArgumentException("Headers cannot be null");
+                namesAndValues.add(name);
+                namesAndValues.add(value);
+                return this;
+            }
+
+            public Headers build() {
+                return new Headers(namesAndValues.toArray(new String[0]));
+            }
+        }
+    }
+
+    /* Request bodies are created by Client. Image data has no content type. */
+    abstract class Body {
+        Body() {
+        }
+
+        /* Null for image data. */
+        public abstract String contentType();
+
+        public abstract long contentLength();
+
+        public abstract void writeTo(OutputStream out) throws IOException;
+
+        /* A one shot body can only be written once, so it cannot be retried. */
+        public boolean isOneShot() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.tinify;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/* Produces several outputs from a single upload, such as the sizes and
+   formats of a responsive image set. Each variant is a named chain of
+   commands applied to the same source. The outputs are requested at the
+   same time with the asynchronous API, so they share the connection pool
+   of the source's client; the blocking methods wait for them together.
+   When a variant fails, the plan fails with the error of the first failed
+   variant in plan order, once every variant has completed. */
+public class VariantPlan {
+    private final Map<String, Function<Source, Source>> variants = new LinkedHashMap<>();
+    private int parallelism = 0;
+
+    public VariantPlan variant(final String name, final Function<Source, Source> commands) {
+        if (name == null || commands == null) {
+            throw new IllegalArgumentException("Variant name and commands must not be null");
+        }
+        if (variants.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate variant: " + name);
+        }
+        variants.put(name, commands);
+        return this;
+    }
+
+    public VariantPlan resize(final String name, final Options options) {
+        return variant(name, source -> source.resize(options));
+    }
+
+    public VariantPlan convert(final String name, final Options options) {
+        return variant(name, source -> source.convert(options));
+    }
+
+    public final Set<String> names() {
+        return Collections.unmodifiableSet(variants.keySet());
+    }
+
+    /* Limits the number of outputs requested at the same time. By default all
+       variants are requested at once, and the maximum requests per host of the
+       client limits how many are sent concurrently. */
+    public VariantPlan parallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public final int parallelism() {
+        return parallelism;
+    }
+
+    /* The results by variant name, in plan order. */
+    public Map<String, Result> results(final Source source) throws IOException {
+        return await(resultsAsync(source));
+    }
+
+    public CompletableFuture<Map<String, Result>> resultsAsync(final Source source) {
+        return run(source, (name, variant) -> variant.resultAsync());
+    }
+
+    /* Writes each variant to the path returned for its name, and returns the
+       paths by variant name. */
+    public Map<String, Path> toFiles(final Source source, final Function<String, Path> target) throws IOException {
+        return await(toFilesAsync(source, target));
+    }
+
+    /* Writes each variant to the directory as its name with the extension of
+       its output format, e.g. "thumbnail.webp". */
+    public Map<String, Path> toFiles(final Source source, final Path directory) throws IOException {
+        return await(toFilesAsync(source, directory));
+    }
+
+    public CompletableFuture<Map<String, Path>> toFilesAsync(final Source source, final Function<String, Path> target) {
+        return run(source, (name, variant) -> variant.resultAsync()
+                .thenCompose(result -> write(result, target.apply(name))));
+    }
+
+    public CompletableFuture<Map<String, Path>> toFilesAsync(final Source source, final Path directory) {
+        return run(source, (name, variant) -> variant.resultAsync()
+                .thenCompose(result -> write(result, directory.resolve(
+                        result.extension() == null ? name : name + "." + result.extension()))));
+    }
+
+    private <T> CompletableFuture<Map<String, T>> run(final Source source,
+                                                      final BiFunction<String, Source, CompletableFuture<T>> step) {
+        final AsyncPermits permits = parallelism > 0 ? new AsyncPermits(parallelism) : null;
+        final List<String> names = new ArrayList<>(variants.size());
+        final List<CompletableFuture<T>> outputs = new ArrayList<>(variants.size());
+
+        for (Map.Entry<String, Function<Source, Source>> variant : variants.entrySet()) {
+            final String name = variant.getKey();
+            final Function<Source, Source> commands = variant.getValue();
+            names.add(name);
+            if (permits == null) {
+                outputs.add(start(() -> step.apply(name, commands.apply(source))));
+            } else {
+                outputs.add(permits.run(() -> step.apply(name, commands.apply(source))));
+            }
+        }
+
+        return CompletableFuture.allOf(outputs.toArray(new CompletableFuture<?>[0])).handle((ignored, error) -> {
+            Map<String, T> results = new LinkedHashMap<>();
+            for (int i = 0; i < names.size(); i++) {
+                /* Throws the first failure in plan order. */
+                results.put(names.get(i), outputs.get(i).join());
+            }
+            return Collections.unmodifiableMap(results);
+        });
+    }
+
+    private static <T> CompletableFuture<T> start(final Supplier<CompletableFuture<T>> step) {
+        try {
+            return step.get();
+        } catch (RuntimeException e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    private static CompletableFuture<Path> write(final Result result, final Path output) {
+        Path parent = output.toAbsolutePath().getParent();
+        if (parent != null) {
+            try {
+                Files.createDirectories(parent);
+            } catch (IOException e) {
+                CompletableFuture<Path> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return future;
+            }
+        }
+        return result.toFileAsync(output.toString()).thenApply(ignored -> output);
+    }
+
+    private static <T> T await(final CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.tinify;
+
+import java.util.concurrent.ExecutorService;
+
+/* Virtual threads need Java 21. This is the version for older runtimes; the
+   multi-release jar carries a replacement in META-INF/versions/21. */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    static boolean available() {
+        return false;
+    }
+
+    static ExecutorService newThreadPerTaskExecutor(final String name) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+    }
+}
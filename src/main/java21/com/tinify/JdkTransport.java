@@ -0,0 +1,199 @@
+package com.tinify;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.Authenticator;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Sends requests with java.net.http. Loaded from META-INF/versions/21
+   instead of the Java 8 version. */
+final class JdkTransport implements Transport {
+    private final HttpClient client;
+    private final long callTimeout;
+    private final AtomicInteger running = new AtomicInteger();
+
+    static boolean available() {
+        return true;
+    }
+
+    static Transport create(final String proxy, final ClientConfig config) {
+        return new JdkTransport(proxy, config);
+    }
+
+    private JdkTransport(final String proxy, final ClientConfig config) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .sslContext(TLSContext.sslContext)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .version(config.http2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1);
+
+        if (proxy != null) {
+            try {
+                configureProxy(builder, new URI(proxy));
+            } catch (java.lang.Exception e) {
+                throw new ConnectionException("Invalid proxy: " + e.getMessage(), e);
+            }
+        }
+
+        if (config.virtualThreads()) {
+            builder.executor(VirtualThreads.newThreadPerTaskExecutor("Tinify transport"));
+        }
+
+        /* java.net.http has no read and write timeouts. */
+        if (config.connectTimeout() > 0) {
+            builder.connectTimeout(Duration.ofMillis(config.connectTimeout()));
+        }
+        callTimeout = config.callTimeout();
+
+        client = builder.build();
+    }
+
+    /* java.net.http only answers proxy challenges for Basic when
+       jdk.http.auth.tunneling.disabledSchemes allows it. */
+    private static void configureProxy(final HttpClient.Builder builder, final URI proxy) {
+        if (proxy.getHost() == null) {
+            throw new IllegalArgumentException("no host in " + proxy);
+        }
+        int port = proxy.getPort() >= 0 ? proxy.getPort() : "https".equals(proxy.getScheme()) ? 443 : 80;
+        builder.proxy(ProxySelector.of(new InetSocketAddress(proxy.getHost(), port)));
+
+        String user = proxy.getUserInfo();
+        if (user == null) return;
+
+        int c = user.indexOf(':');
+        final String username = 0 < c ? user.substring(0, c) : user;
+        final char[] password = 0 < c ? user.substring(c + 1).toCharArray() : new char[0];
+        builder.authenticator(new Authenticator() {
+            @Override protected PasswordAuthentication getPasswordAuthentication() {
+                if (getRequestorType() != RequestorType.PROXY) return null;
+                return new PasswordAuthentication(username, password);
+            }
+        });
+    }
+
+    @Override public Transport.Response execute(final Transport.Request request) throws IOException {
+        HttpRequest httpRequest = newRequest(request);
+        running.incrementAndGet();
+        try {
+            if (!request.stream()) {
+                HttpResponse<byte[]> response = client.send(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+                return new Transport.Response(response.statusCode(), headers(response), response.body());
+            }
+
+            HttpResponse<InputStream> response = client.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+            int status = response.statusCode();
+            if (status >= 200 && status < 300) {
+                return new Transport.Response(status, headers(response), response.body());
+            }
+            try (InputStream stream = response.body()) {
+                return new Transport.Response(status, headers(response), stream.readAllBytes());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a response");
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    @Override public CompletableFuture<Transport.Response> executeAsync(final Transport.Request request) {
+        final HttpRequest httpRequest;
+        try {
+            httpRequest = newRequest(request);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        running.incrementAndGet();
+        final CompletableFuture<HttpResponse<byte[]>> exchange =
+                client.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+        exchange.whenComplete((response, error) -> running.decrementAndGet());
+
+        final CompletableFuture<Transport.Response> future = exchange.thenApply(response ->
+                new Transport.Response(response.statusCode(), headers(response), response.body()));
+        future.whenComplete((response, error) -> {
+            if (future.isCancelled()) exchange.cancel(true);
+        });
+        return future;
+    }
+
+    @Override public int runningRequestCount() {
+        return running.get();
+    }
+
+    private HttpRequest newRequest(final Transport.Request request) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.url()))
+                .method(request.method(), publisher(request.body()));
+
+        /* The deadline replaces the call timeout when it is sooner. */
+        long timeout = request.timeout();
+        if (timeout == 0 || callTimeout > 0 && callTimeout < timeout) {
+            timeout = callTimeout;
+        }
+        if (timeout > 0) {
+            builder.timeout(Duration.ofMillis(timeout));
+        }
+
+        Headers headers = request.headers();
+        for (int i = 0; i < headers.size(); i++) {
+            builder.header(headers.name(i), headers.value(i));
+        }
+
+        Body body = request.body();
+        String contentType = body == null ? null : body.contentType();
+        if (contentType != null) {
+            builder.header("Content-Type", contentType);
+        }
+        return builder.build();
+    }
+
+    /* Files and streams are sent without a copy on the heap, and byte arrays
+       without another copy. */
+    private static HttpRequest.BodyPublisher publisher(final Body body) throws IOException {
+        if (body == null) {
+            return HttpRequest.BodyPublishers.noBody();
+        } else if (body instanceof BytesBody) {
+            return HttpRequest.BodyPublishers.ofByteArray(((BytesBody) body).bytes());
+        } else if (body instanceof FileBody) {
+            return HttpRequest.BodyPublishers.ofFile(((FileBody) body).path());
+        } else if (body instanceof StreamBody) {
+            final StreamBody stream = (StreamBody) body;
+            return HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(() -> {
+                try {
+                    return stream.open();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }), stream.contentLength());
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        body.writeTo(buffer);
+        return HttpRequest.BodyPublishers.ofByteArray(buffer.toByteArray());
+    }
+
+    private static Headers headers(final HttpResponse<?> response) {
+        Headers.Builder builder = new Headers.Builder();
+        for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+            /* HTTP/2 pseudo headers such as :status are not headers of the response. */
+            if (header.getKey().startsWith(":")) continue;
+            for (String value : header.getValue()) {
+                builder.add(header.getKey(), value);
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,18 @@
+package com.tinify;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/* Loaded from META-INF/versions/21 instead of the Java 8 version. */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    static boolean available() {
+        return true;
+    }
+
+    static ExecutorService newThreadPerTaskExecutor(final String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + " ", 1).factory());
+    }
+}
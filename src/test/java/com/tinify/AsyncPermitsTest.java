@@ -0,0 +1,44 @@
+package com.tinify;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class AsyncPermitsTest {
+    AsyncPermits subject;
+
+    @Before
+    public void setup() {
+        subject = new AsyncPermits(1);
+    }
+
+    @Test
+    public void acquireWithAvailablePermitShouldComplete() {
+        assertThat(subject.acquire().isDone(), is(true));
+    }
+
+    @Test
+    public void acquireWithoutAvailablePermitShouldWait() {
+        subject.acquire();
+        assertThat(subject.acquire().isDone(), is(false));
+    }
+
+    @Test
+    public void releaseShouldCompleteWaitingAcquire() {
+        subject.acquire();
+        CompletableFuture<Void> waiting = subject.acquire();
+        subject.release();
+        assertThat(waiting.isDone(), is(true));
+    }
+
+    @Test
+    public void releaseWithoutWaitingAcquireShouldReturnPermit() {
+        subject.acquire();
+        subject.release();
+        assertThat(subject.acquire().isDone(), is(true));
+    }
+}
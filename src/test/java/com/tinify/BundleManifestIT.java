@@ -74,4 +74,18 @@ public class BundleManifestIT {
         assertTrue("Bundle-ClassPath must contain gson", bundleClassPath.contains("gson"));
         assertTrue("Bundle-ClassPath must contain okio", bundleClassPath.contains("okio"));
     }
+
+    @Test
+    public void jarHasJava21LayerWhenBuiltOnJava21() throws IOException {
+        String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.") || Integer.parseInt(version) < 21) return;
+
+        String buildDir = System.getProperty("project.build.directory", "target");
+        String finalName = System.getProperty("project.build.finalName", "tinify-1.8.9");
+        try (JarFile jarFile = new JarFile(new File(buildDir, finalName + ".jar"))) {
+            assertEquals("true", jarFile.getManifest().getMainAttributes().getValue("Multi-Release"));
+            assertNotNull("Missing Java 21 layer",
+                jarFile.getEntry("META-INF/versions/21/com/tinify/VirtualThreads.class"));
+        }
+    }
 }
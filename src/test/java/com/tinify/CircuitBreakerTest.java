@@ -0,0 +1,238 @@
+package com.tinify;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+    CircuitBreaker subject;
+
+    @Before
+    public void setup() {
+        subject = new CircuitBreaker().windowSize(4).minimumCalls(4).failureThreshold(0.5)
+                .openDuration(50, TimeUnit.MILLISECONDS).probes(2);
+    }
+
+    private void record(final boolean... outcomes) {
+        for (boolean failed : outcomes) {
+            subject.record(subject.acquire(), failed);
+        }
+    }
+
+    private static Transport.Response serverError() {
+        return new Transport.Response(500, Transport.Headers.of(),
+                "{\"error\":\"InternalServerError\",\"message\":\"Oops!\"}".getBytes());
+    }
+
+    @Test
+    public void shouldStayClosedBelowMinimumCalls() {
+        record(true, true, true);
+        assertThat(subject.state(), is(equalTo(CircuitBreaker.State.CLOSED)));
+    }
+
+    @Test
+    public void shouldStayClosedBelowFailureThreshold() {
+        record(false, true, false, false, false, true, false, false);
+        assertThat(subject.state(), is(equalTo(CircuitBreaker.State.CLOSED)));
+    }
+
+    @Test
+    public void shouldOpenAtFailureThreshold() {
+        record(false, true, false, true);
+        assertThat(subject.state(), is(equalTo(CircuitBreaker.State.OPEN)));
+    }
+
+    @Test
+    public void shouldOnlyCountRecentCalls() {
+        record(true, false, false, false, false);
+        assertThat(subject.failureRate(), is(equalTo(0.0)));
+        record(true);
+        assertThat(subject.failureRate(), is(equalTo(0.25)));
+    }
+
+    @Test
+    public void shouldRejectWhileOpen() {
+        record(true, true, true, true);
+        try {
+            subject.acquire();
+            fail("Expected an Exception to be thrown");
+        } catch (CircuitOpenException e) {
+            assertThat(e.getRetryAfter() > 0, is(true));
+            assertThat(e.getRetryAfter() <= 50, is(true));
+        }
+    }
+
+    @Test
+    public void shouldCloseAfterSuccessfulProbes() throws InterruptedException {
+        record(true, true, true, true);
+        Thread.sleep(60);
+        assertThat(subject.state(), is(equalTo(CircuitBreaker.State.HALF_OPEN)));
+
+        long first = subject.acquire();
+        long second = subject.acquire();
+        try {
+            subject.acquire();
+            fail("Expected an Exception to be thrown");
+        } catch (CircuitOpenException e) {
+            assertThat(e.getRetryAfter(), is(equalTo(0L)));
+        }
+
+        subject.record(first, false);
+        subject.record(second, false);
+        assertThat(subject.state(), is(equalTo(CircuitBreaker.State.CLOSED)));
+        assertThat(subject.failureRate(), is(equalTo(0.0)));
+    }
+
+    @Test
+    public void shouldReopenAfterFailedProbe() throws InterruptedException {
+        record(true, true, true, true);
+        Thread.sleep(60);
+        long probe = subject.acquire();
+        subject.record(probe, true);
+        assertThat(subject.state(), is(equalTo(CircuitBreaker.State.OPEN)));
+    }
+
+    @Test
+    public void shouldReleaseCancelledProbe() throws InterruptedException {
+        subject.probes(1);
+        record(true, true, true, true);
+        Thread.sleep(60);
+        subject.cancel(subject.acquire());
+        subject.record(subject.acquire(), false);
+        assertThat(subject.state(), is(equalTo(CircuitBreaker.State.CLOSED)));
+    }
+
+    @Test
+    public void shouldIgnoreOutcomesFromBeforeTransition() throws InterruptedException {
+        long late = subject.acquire();
+        record(true, true, true, true);
+        Thread.sleep(60);
+        long probe = subject.acquire();
+        subject.record(late, true);
+        assertThat(subject.state(), is(equalTo(CircuitBreaker.State.HALF_OPEN)));
+        subject.record(probe, false);
+    }
+
+    @Test
+    public void clientShouldFailFastWhileOpen() {
+        TransportTest.FakeTransport transport = new TransportTest.FakeTransport();
+        for (int i = 0; i < 4; i++) transport.responses.add(serverError());
+        Client client = new Client("key", null, null, new ClientConfig()
+                .transport((proxy, config) -> transport)
+                .retryPolicy(RetryPolicy.none())
+                .circuitBreaker(subject));
+
+        for (int i = 0; i < 4; i++) {
+            try {
+                client.request(Client.Method.POST, "/shrink", new byte[] {1});
+                fail("Expected an Exception to be thrown");
+            } catch (ServerException e) {
+                assertThat(e.getStatus(), is(equalTo(500)));
+            }
+        }
+
+        try {
+            client.request(Client.Method.POST, "/shrink", new byte[] {1});
+            fail("Expected an Exception to be thrown");
+        } catch (CircuitOpenException e) {
+            assertThat(transport.requests.size(), is(equalTo(4)));
+        }
+    }
+
+    @Test
+    public void clientShouldNotRetryOnceOpen() {
+        TransportTest.FakeTransport transport = new TransportTest.FakeTransport();
+        for (int i = 0; i < 8; i++) transport.responses.add(serverError());
+        Client client = new Client("key", null, null, new ClientConfig()
+                .transport((proxy, config) -> transport)
+                .retryPolicy(RetryPolicy.fixed(7, 1, TimeUnit.MILLISECONDS))
+                .circuitBreaker(subject));
+
+        try {
+            client.request(Client.Method.POST, "/shrink", new byte[] {1});
+            fail("Expected an Exception to be thrown");
+        } catch (ServerException e) {
+            assertThat(transport.requests.size(), is(equalTo(4)));
+        }
+    }
+
+    @Test
+    public void clientShouldNotCountClientErrors() {
+        TransportTest.FakeTransport transport = new TransportTest.FakeTransport();
+        for (int i = 0; i < 4; i++) {
+            transport.responses.add(new Transport.Response(400, Transport.Headers.of(),
+                    "{\"error\":\"BadRequest\",\"message\":\"Oops!\"}".getBytes()));
+        }
+        Client client = new Client("key", null, null, new ClientConfig()
+                .transport((proxy, config) -> transport)
+                .circuitBreaker(subject));
+
+        for (int i = 0; i < 4; i++) {
+            try {
+                client.request(Client.Method.POST, "/shrink", new byte[] {1});
+                fail("Expected an Exception to be thrown");
+            } catch (ClientException e) {
+                assertThat(e.getStatus(), is(equalTo(400)));
+            }
+        }
+        assertThat(subject.state(), is(equalTo(CircuitBreaker.State.CLOSED)));
+    }
+
+    @Test
+    public void clientShouldFailAsyncRequestsWhileOpen() throws InterruptedException {
+        TransportTest.FakeTransport transport = new TransportTest.FakeTransport();
+        /* Stays open while the first asynchronous request sets up its threads. */
+        subject.openDuration(10, TimeUnit.SECONDS);
+        record(true, true, true, true);
+        Client client = new Client("key", null, null, new ClientConfig()
+                .transport((proxy, config) -> transport)
+                .circuitBreaker(subject));
+
+        try {
+            client.requestAsync(Client.Method.POST, "/shrink", new byte[] {1}).get();
+            fail("Expected an Exception to be thrown");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(CircuitOpenException.class)));
+            assertThat(transport.requests.size(), is(equalTo(0)));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void clientShouldNotCountExpiredDeadlines() {
+        TransportTest.FakeTransport transport = new TransportTest.FakeTransport() {
+            @Override public Transport.Response execute(final Transport.Request request) throws IOException {
+                try {
+                    Thread.sleep(request.timeout() + 5);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                throw new SocketTimeoutException("timeout");
+            }
+        };
+        Client client = new Client("key", null, null, new ClientConfig()
+                .transport((proxy, config) -> transport)
+                .circuitBreaker(subject));
+
+        for (int i = 0; i < 4; i++) {
+            try (RequestContext context = RequestContext.withTimeout(20, TimeUnit.MILLISECONDS)) {
+                client.request(Client.Method.POST, "/shrink", new byte[] {1});
+                fail("Expected an Exception to be thrown");
+            } catch (DeadlineExceededException e) {
+                assertThat(subject.state(), is(equalTo(CircuitBreaker.State.CLOSED)));
+            }
+        }
+        assertThat(subject.failureRate(), is(equalTo(0.0)));
+    }
+}
@@ -64,4 +64,46 @@ public class ClientEndpointTest {
             assertEquals(url, request.url().toString());
         }};
     }
+
+    @Test
+    public void requestShouldAddConfiguredApiEndpoint() throws Exception {
+        subject = new Client(key, null, null, new ClientConfig().apiEndpoint("http://localhost:8080/"));
+
+        new Expectations() {{
+            httpClient.newCall((Request) any);
+            result = new ConnectionException();
+        }};
+
+        try {
+            subject.request(Client.Method.POST, "/shrink", new byte[] {});
+        } catch(Exception e) {
+            // not interested in result
+        }
+        new Verifications() {{
+            Request request;
+            httpClient.newCall(request = withCapture());
+            assertEquals("http://localhost:8080/shrink", request.url().toString());
+        }};
+    }
+
+    @Test
+    public void requestShouldNotAddApiEndpointToHttpUrl() throws Exception {
+        final String url = "http://localhost:8080/output/13259adadfq3.png";
+
+        new Expectations() {{
+            httpClient.newCall((Request) any);
+            result = new ConnectionException();
+        }};
+
+        try {
+            subject.request(Client.Method.GET, url);
+        } catch(Exception e) {
+            // not interested in result
+        }
+        new Verifications() {{
+            Request request;
+            httpClient.newCall(request = withCapture());
+            assertEquals(url, request.url().toString());
+        }};
+    }
 }
@@ -0,0 +1,170 @@
+package com.tinify;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ClientPoolTest {
+    ClientPool subject;
+    MockWebServer server;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+
+        server = new MockWebServer();
+        server.start();
+        subject = new ClientPool(Arrays.asList("key1", "key2"));
+        new MockUp<HttpUrl>()
+        {
+            @Mock
+            @SuppressWarnings("unused")
+            HttpUrl parse(Invocation inv, String url)
+            {
+                if (url.contains("localhost")) {
+                    return inv.proceed();
+                } else {
+                    return new HttpUrl.Builder()
+                            .scheme("http")
+                            .host(server.getHostName())
+                            .port(server.getPort())
+                            .encodedPath("/shrink")
+                            .build();
+                }
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void clientShouldPreferKeyWithLowerCompressionCount() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(201)
+                .addHeader("Compression-Count", 400));
+        server.enqueue(new MockResponse()
+                .setResponseCode(201)
+                .addHeader("Compression-Count", 20));
+
+        subject.clients().get(0).request(Client.Method.POST, "/shrink");
+        subject.clients().get(1).request(Client.Method.POST, "/shrink");
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(subject.client(), is(sameInstance(subject.clients().get(1))));
+        }
+    }
+
+    @Test
+    public void clientShouldSpreadOverKeysWithEqualLoad() {
+        Client first = subject.client();
+        Client second = subject.client();
+        assertThat(first, is(not(sameInstance(second))));
+    }
+
+    @Test
+    public void clientShouldSkipKeyOverQuota() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(201)
+                .addHeader("Compression-Count", 500));
+
+        subject.quota(500);
+        subject.clients().get(1).request(Client.Method.POST, "/shrink");
+
+        assertThat(subject.availableCount(), is(equalTo(1)));
+        assertThat(subject.client(), is(sameInstance(subject.clients().get(0))));
+    }
+
+    @Test
+    public void clientShouldSkipKeyWithInvalidCredentials() {
+        server.enqueue(new MockResponse()
+                .setResponseCode(401)
+                .setBody("{'error':'Unauthorized','message':'Credentials are invalid'}"));
+
+        try {
+            subject.clients().get(0).request(Client.Method.POST, "/shrink");
+        } catch (AccountException e) {
+            /* Expected. */
+        }
+
+        assertThat(subject.availableCount(), is(equalTo(1)));
+        assertThat(subject.client(), is(sameInstance(subject.clients().get(1))));
+
+        subject.restore();
+        assertThat(subject.availableCount(), is(equalTo(2)));
+    }
+
+    @Test(expected = AccountException.class)
+    public void clientWithoutAvailableKeysShouldThrowAccountException() {
+        for (int i = 0; i < 2; i++) {
+            server.enqueue(new MockResponse()
+                    .setResponseCode(429)
+                    .setBody("{'error':'TooManyRequests','message':'Your monthly limit has been exceeded'}"));
+        }
+
+        for (Client client : subject.clients()) {
+            try {
+                client.request(Client.Method.POST, "/shrink");
+            } catch (AccountException e) {
+                /* Expected. */
+            }
+        }
+
+        subject.client();
+    }
+
+    @Test
+    public void sourceShouldKeepUsingKeyItWasUploadedWith() throws java.lang.Exception {
+        Tinify.setClientPool(subject);
+        try {
+            server.enqueue(new MockResponse()
+                    .setResponseCode(201)
+                    .addHeader("Location", "https://api.tinify.com/some/location"));
+            server.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody("compressed file"));
+
+            Source source = Source.fromBuffer("png file".getBytes());
+            subject.client();
+            source.toBuffer();
+
+            RecordedRequest upload = server.takeRequest();
+            RecordedRequest result = server.takeRequest();
+            assertThat(result.getHeader("Authorization"), is(equalTo(upload.getHeader("Authorization"))));
+        } finally {
+            Tinify.setClientPool(null);
+        }
+    }
+
+    @Test
+    public void compressionCountsShouldBeTrackedPerKey() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(201)
+                .addHeader("Compression-Count", 7));
+
+        subject.clients().get(1).request(Client.Method.POST, "/shrink");
+
+        assertThat(subject.compressionCounts().get("key1"), is(equalTo(-1)));
+        assertThat(subject.compressionCounts().get("key2"), is(equalTo(7)));
+    }
+}
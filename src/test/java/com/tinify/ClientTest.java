@@ -15,11 +15,17 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -475,4 +481,345 @@ public class ClientTest {
             assertEquals("Oops! (HTTP 401/Unauthorized)", e.getMessage());
         }
     }
+
+    @Test
+    public void requestAsyncWhenValidShouldReturnResponse() throws java.lang.Exception {
+        enqueuShrink();
+
+        Client.Response response = subject.requestAsync(Client.Method.POST, "/shrink", new byte[] {}).get(5, TimeUnit.SECONDS);
+        assertEquals("https://api.tinify.com/foo.png", response.headers.get("Location"));
+    }
+
+    @Test
+    public void requestAsyncWhenValidShouldIssueRequestWithJSONBody() throws java.lang.Exception {
+        enqueuShrink();
+        subject.requestAsync(Client.Method.POST, "/shrink", new Options().with("hello", "world")).get(5, TimeUnit.SECONDS);
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        Gson gson = new Gson();
+        assertEquals("world", gson.fromJson(request.getBody().readUtf8(), HashMap.class).get("hello"));
+        assertEquals("application/json; charset=utf-8", request.getHeader("Content-Type"));
+    }
+
+    @Test
+    public void requestAsyncWithServerErrorOnceShouldReturnResponse() throws java.lang.Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(584)
+                .setBody("{'error':'InternalServerError','message':'Oops!'}"));
+        server.enqueue(new MockResponse()
+                .setResponseCode(201)
+                .setBody("ok"));
+
+        Client.Response response = subject.requestAsync(Client.Method.POST, "/shrink").get(5, TimeUnit.SECONDS);
+        assertEquals("ok", new String(response.body));
+    }
+
+    @Test
+    public void requestAsyncWithServerErrorRepeatedlyShouldCompleteWithServerException() throws java.lang.Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(584)
+                .setBody("{'error':'InternalServerError','message':'Oops!'}"));
+        server.enqueue(new MockResponse()
+                .setResponseCode(584)
+                .setBody("{'error':'InternalServerError','message':'Oops!'}"));
+
+        try {
+            subject.requestAsync(Client.Method.POST, "/shrink").get(5, TimeUnit.SECONDS);
+            fail("Expected an Exception to be thrown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ServerException);
+            assertEquals("Oops! (HTTP 584/InternalServerError)", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void requestAsyncWithClientErrorShouldCompleteWithClientException() throws java.lang.Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(492)
+                .setBody("{'error':'BadRequest','message':'Oops!'}"));
+
+        try {
+            subject.requestAsync(Client.Method.POST, "/shrink").get(5, TimeUnit.SECONDS);
+            fail("Expected an Exception to be thrown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ClientException);
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void requestWithFileShouldStreamFileContents() throws java.lang.Exception {
+        enqueuShrink();
+
+        Path file = Paths.get(getClass().getResource("/voormedia.png").toURI());
+        subject.request(Client.Method.POST, "/shrink", file);
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals(Files.size(file), request.getBodySize());
+        assertTrue(Arrays.equals(Files.readAllBytes(file), request.getBody().readByteArray()));
+    }
+
+    @Test
+    public void requestWithFileAndServerErrorOnceShouldSendFileAgain() throws java.lang.Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(584)
+                .setBody("{'error':'InternalServerError','message':'Oops!'}"));
+        enqueuShrink();
+
+        Path file = Paths.get(getClass().getResource("/voormedia.png").toURI());
+        subject.request(Client.Method.POST, "/shrink", file);
+
+        assertEquals(Files.size(file), server.takeRequest(5, TimeUnit.SECONDS).getBodySize());
+        assertEquals(Files.size(file), server.takeRequest(5, TimeUnit.SECONDS).getBodySize());
+    }
+
+    @Test
+    public void requestWithStreamShouldSendStreamContents() throws java.lang.Exception {
+        enqueuShrink();
+
+        byte[] body = "png file".getBytes();
+        subject.request(Client.Method.POST, "/shrink", new ByteArrayInputStream(body), body.length);
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("png file", request.getBody().readUtf8());
+    }
+
+    @Test(expected = ServerException.class)
+    public void requestWithStreamAndServerErrorShouldNotSendStreamAgain() throws java.lang.Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(584)
+                .setBody("{'error':'InternalServerError','message':'Oops!'}"));
+        enqueuShrink();
+
+        byte[] body = "png file".getBytes();
+        try {
+            subject.request(Client.Method.POST, "/shrink", new ByteArrayInputStream(body), body.length);
+        } finally {
+            assertEquals(1, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void requestWithConfigShouldIssueRequest() throws java.lang.Exception {
+        enqueuShrink();
+        Client client = new Client(key, null, null, new ClientConfig()
+                .http2(false)
+                .maxRequestsPerHost(20)
+                .sendBufferSize(64 * 1024)
+                .receiveBufferSize(64 * 1024));
+
+        Client.Response response = client.request(Client.Method.POST, "/shrink");
+        assertEquals("https://api.tinify.com/foo.png", response.headers.get("Location"));
+    }
+
+    @Test
+    public void connectionCountAfterRequestShouldReportIdleConnection() throws java.lang.Exception {
+        enqueuShrink();
+        subject.request(Client.Method.POST, "/shrink");
+
+        assertEquals(1, subject.connectionCount());
+        assertEquals(1, subject.idleConnectionCount());
+        assertEquals(0, subject.activeConnectionCount());
+        assertEquals(0, subject.runningRequestCount());
+    }
+
+    @Test
+    public void connectionCountWithoutIdleConnectionsShouldBeZero() throws java.lang.Exception {
+        enqueuShrink();
+        Client client = new Client(key, null, null, new ClientConfig().maxIdleConnections(0));
+        client.request(Client.Method.POST, "/shrink");
+
+        assertEquals(0, client.idleConnectionCount());
+    }
+
+    @Test
+    public void requestWithRateLimitAndRetryAfterShouldRetryWithBackoff() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(429)
+                .addHeader("Retry-After", "0")
+                .setBody("{'error':'TooManyRequests','message':'Slow down'}"));
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        Client client = new Client(key, null, null, new ClientConfig()
+                .retryPolicy(RetryPolicy.exponential().baseDelay(1, TimeUnit.MILLISECONDS)));
+        client.request(Client.Method.POST, "/shrink");
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test(expected = AccountException.class)
+    public void requestWithRateLimitWithoutRetryAfterShouldNotRetry() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(429)
+                .setBody("{'error':'TooManyRequests','message':'Your monthly limit has been exceeded'}"));
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        Client client = new Client(key, null, null, new ClientConfig()
+                .retryPolicy(RetryPolicy.exponential().baseDelay(1, TimeUnit.MILLISECONDS)));
+        client.request(Client.Method.POST, "/shrink");
+    }
+
+    @Test
+    public void requestWithServerErrorsShouldRetryUpToMaxRetries() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse()
+                    .setResponseCode(584)
+                    .setBody("{'error':'InternalServerError','message':'Oops!'}"));
+        }
+
+        Client client = new Client(key, null, null, new ClientConfig()
+                .retryPolicy(RetryPolicy.exponential().maxRetries(3).baseDelay(1, TimeUnit.MILLISECONDS)));
+        try {
+            client.request(Client.Method.POST, "/shrink");
+            fail("Expected an Exception to be thrown");
+        } catch (ServerException e) {
+            assertEquals(584, e.getStatus());
+        }
+        assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    public void requestWithoutRetriesShouldNotRetryServerErrors() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(584)
+                .setBody("{'error':'InternalServerError','message':'Oops!'}"));
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        Client client = new Client(key, null, null, new ClientConfig().retryPolicy(RetryPolicy.none()));
+        try {
+            client.request(Client.Method.POST, "/shrink");
+            fail("Expected an Exception to be thrown");
+        } catch (ServerException e) {
+            assertEquals(1, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void requestAsyncWithServerErrorsShouldRetryWithPolicy() throws java.lang.Exception {
+        for (int i = 0; i < 2; i++) {
+            server.enqueue(new MockResponse()
+                    .setResponseCode(503)
+                    .addHeader("Retry-After", "0")
+                    .setBody("{'error':'ServiceUnavailable','message':'Busy'}"));
+        }
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        Client client = new Client(key, null, null, new ClientConfig()
+                .retryPolicy(RetryPolicy.exponential().baseDelay(1, TimeUnit.MILLISECONDS)));
+        client.requestAsync(Client.Method.POST, "/shrink").get(5, TimeUnit.SECONDS);
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void retryAfterShouldParseSecondsAndDates() {
+        assertEquals(120000, Client.retryAfter("120"));
+        assertEquals(0, Client.retryAfter("Thu, 01 Jan 1970 00:00:00 GMT"));
+        assertEquals(-1, Client.retryAfter("soon"));
+        assertEquals(-1, Client.retryAfter(null));
+    }
+
+    @Test
+    public void requestWithRateLimiterBeyondLimitShouldFailBeforeSending() throws Exception {
+        enqueuShrink();
+        enqueuShrink();
+
+        Client client = new Client(key, null, null, new ClientConfig()
+                .rateLimiter(new RateLimiter(1).burst(1).maxWait(0, TimeUnit.MILLISECONDS)));
+        client.request(Client.Method.POST, "/shrink", "png file".getBytes());
+        try {
+            client.request(Client.Method.POST, "/shrink", "png file".getBytes());
+            fail("Expected an Exception to be thrown");
+        } catch (RateLimitException e) {
+            assertEquals(1, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void requestWithRateLimiterAndTooManyRequestsShouldLowerRate() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(429)
+                .setBody("{'error':'TooManyRequests','message':'Slow down'}"));
+
+        RateLimiter limiter = new RateLimiter(8);
+        Client client = new Client(key, null, null, new ClientConfig().rateLimiter(limiter));
+        try {
+            client.request(Client.Method.POST, "/shrink", "png file".getBytes());
+            fail("Expected an Exception to be thrown");
+        } catch (AccountException e) {
+            assertEquals(4.0, limiter.rate(key), 0.001);
+        }
+    }
+
+    @Test
+    public void requestWhenValidShouldUpdateCompressionCountOfClient() throws Exception {
+        enqueuShrink();
+        assertEquals(-1, subject.compressionCount());
+        subject.request(Client.Method.POST, "/shrink", new byte[] {});
+        assertEquals(12, subject.compressionCount());
+    }
+
+    @Test
+    public void requestWithChangedCompressionCountShouldNotifyListener() throws Exception {
+        final List<String> counts = new ArrayList<>();
+        Client client = new Client(key, null, null, new ClientConfig()
+                .compressionCountListener((k, count) -> counts.add(k + "=" + count)));
+
+        enqueuShrink();
+        enqueuShrink();
+        server.enqueue(new MockResponse()
+                .setResponseCode(201)
+                .addHeader("Compression-Count", 13));
+
+        client.request(Client.Method.POST, "/shrink");
+        client.request(Client.Method.POST, "/shrink");
+        client.request(Client.Method.POST, "/shrink");
+        assertEquals(Arrays.asList("key=12", "key=13"), counts);
+    }
+
+    @Test
+    public void requestWithFailingListenerShouldSucceed() throws Exception {
+        Client client = new Client(key, null, null, new ClientConfig()
+                .compressionCountListener((k, count) -> { throw new IllegalStateException("listener"); }));
+
+        enqueuShrink();
+        client.request(Client.Method.POST, "/shrink");
+        assertEquals(12, client.compressionCount());
+    }
+
+    @Test
+    public void requestWithEventListenerShouldReportRequest() throws Exception {
+        final List<RequestEvent> events = new ArrayList<>();
+        Client client = new Client(key, null, null, new ClientConfig().eventListener(events::add));
+
+        enqueuShrink();
+        client.request(Client.Method.POST, "/shrink", "png file".getBytes());
+
+        assertEquals(1, events.size());
+        RequestEvent event = events.get(0);
+        assertEquals(TinifyEventListener.Endpoint.SHRINK, event.endpoint());
+        assertEquals("POST", event.method());
+        assertEquals(1, event.attempt());
+        assertEquals(201, event.status());
+        assertEquals(8, event.bytesSent());
+        assertTrue(event.totalNanos() > 0);
+        assertTrue(event.waitingNanos() >= 0);
+    }
+
+    @Test
+    public void requestWithEventListenerShouldReportEachAttempt() throws Exception {
+        final List<RequestEvent> events = new ArrayList<>();
+        Client client = new Client(key, null, null, new ClientConfig().eventListener(events::add));
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(584)
+                .setBody("{'error':'InternalServerError','message':'Oops!'}"));
+        server.enqueue(new MockResponse().setResponseCode(200));
+
+        client.request(Client.Method.POST, "https://api.tinify.com/output/abc",
+                new Options().with("store", new Options().with("service", "s3")));
+
+        assertEquals(2, events.size());
+        assertEquals(TinifyEventListener.Endpoint.STORE, events.get(0).endpoint());
+        assertEquals(584, events.get(0).status());
+        assertEquals(2, events.get(1).attempt());
+        assertEquals(200, events.get(1).status());
+    }
 }
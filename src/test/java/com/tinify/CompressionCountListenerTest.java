@@ -0,0 +1,38 @@
+package com.tinify;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CompressionCountListenerTest {
+    @Test
+    public void thresholdShouldNotifyOncePerKeyWhenReached() {
+        final List<String> calls = new ArrayList<>();
+        CompressionCountListener subject = CompressionCountListener.threshold(450,
+                (key, count) -> calls.add(key + "=" + count));
+
+        subject.compressionCountChanged("key", 449);
+        subject.compressionCountChanged("key", 450);
+        subject.compressionCountChanged("key", 451);
+        subject.compressionCountChanged("other", 460);
+        assertThat(calls, is(equalTo(Arrays.asList("key=450", "other=460"))));
+    }
+
+    @Test
+    public void thresholdShouldRearmWhenCountDrops() {
+        final List<String> calls = new ArrayList<>();
+        CompressionCountListener subject = CompressionCountListener.threshold(450,
+                (key, count) -> calls.add(key + "=" + count));
+
+        subject.compressionCountChanged("key", 450);
+        subject.compressionCountChanged("key", 1);
+        subject.compressionCountChanged("key", 455);
+        assertThat(calls, is(equalTo(Arrays.asList("key=450", "key=455"))));
+    }
+}
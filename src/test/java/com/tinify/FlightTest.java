@@ -0,0 +1,205 @@
+package com.tinify;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FlightTest {
+    Client subject;
+    MockWebServer server;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+
+        server = new MockWebServer();
+        server.start();
+        subject = new Client("key");
+        new MockUp<HttpUrl>()
+        {
+            @Mock
+            @SuppressWarnings("unused")
+            HttpUrl parse(Invocation inv, String url)
+            {
+                if (url.contains("localhost")) {
+                    return inv.proceed();
+                } else {
+                    return new HttpUrl.Builder()
+                            .scheme("http")
+                            .host(server.getHostName())
+                            .port(server.getPort())
+                            .encodedPath("/shrink")
+                            .build();
+                }
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private List<RecordedEvent> record(final String name, final Runnable action) throws IOException {
+        Path file = Files.createTempFile("tinify", ".jfr");
+        try (Recording recording = new Recording()) {
+            if (name != null) recording.enable(name);
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().startsWith("com.tinify.")) events.add(event);
+            }
+            return events;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void beginShouldReturnNullWhenEventsAreNotEnabled() {
+        assertNull(Flight.beginApiCall());
+        assertNull(Flight.beginSource());
+        assertNull(Flight.beginResult());
+        assertNull(Flight.beginToFile());
+    }
+
+    @Test
+    public void requestShouldNotEmitEventsByDefault() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(201));
+        List<RecordedEvent> events = record(null, () -> subject.request(Client.Method.POST, "/shrink", new byte[] {1, 2, 3}));
+        assertEquals(0, events.size());
+    }
+
+    @Test
+    public void requestShouldEmitApiCallWithRetriesWhenEnabled() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("{\"error\":\"InternalServerError\",\"message\":\"Oops!\"}"));
+        server.enqueue(new MockResponse().setResponseCode(201).setBody("{}"));
+        List<RecordedEvent> events = record("com.tinify.ApiCall",
+                () -> subject.request(Client.Method.POST, "/shrink", new byte[] {1, 2, 3}));
+
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals("POST", event.getString("method"));
+        assertEquals("SHRINK", event.getString("endpoint"));
+        assertEquals(201, event.getInt("status"));
+        assertEquals(3, event.getLong("bytesSent"));
+        assertEquals(2, event.getLong("bytesReceived"));
+        assertEquals(1, event.getInt("retries"));
+        assertTrue(event.getDuration().toMillis() >= 400);
+    }
+
+    @Test
+    public void requestShouldEmitApiCallWithStatusOfFinalFailure() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(401).setBody("{\"error\":\"Unauthorized\",\"message\":\"Oops!\"}"));
+        List<RecordedEvent> events = record("com.tinify.ApiCall", () -> {
+            try {
+                subject.request(Client.Method.POST, "/shrink", new byte[] {1});
+            } catch (AccountException ignored) {
+            }
+        });
+
+        assertEquals(1, events.size());
+        assertEquals(401, events.get(0).getInt("status"));
+        assertEquals(0, events.get(0).getInt("retries"));
+    }
+
+    @Test
+    public void toFileShouldEmitEventWithBytesWritten() throws IOException {
+        final Path file = Files.createTempFile("tinify", ".png");
+        try {
+            final Result result = new Result(new Headers.Builder()
+                    .add("Image-Width", "10").add("Image-Height", "20").build(), new byte[] {1, 2, 3, 4});
+            List<RecordedEvent> events = record("com.tinify.ToFile", () -> {
+                try {
+                    result.toFile(file);
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            });
+
+            assertEquals(1, events.size());
+            assertEquals(file.toString(), events.get(0).getString("path"));
+            assertEquals(4, events.get(0).getLong("bytes"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void resultStreamShouldEmitResultEvent() throws IOException {
+        Tinify.setKey("key");
+        server.enqueue(new MockResponse().setResponseCode(200)
+                .addHeader("Image-Width", "10").addHeader("Image-Height", "20").setBody("png"));
+        List<RecordedEvent> events = record("com.tinify.Result", () -> {
+            try (Result result = new Source("https://api.tinify.com/some/location", new Options()).resultStream()) {
+                result.toBuffer();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        assertEquals(1, events.size());
+        assertEquals("resultStream", events.get(0).getString("operation"));
+        assertEquals(10, events.get(0).getInt("width"));
+        assertEquals(3, events.get(0).getLong("bytes"));
+    }
+
+    @Test
+    public void toFileShouldEmitResultEvent() throws IOException {
+        final Path file = Files.createTempFile("tinify", ".png");
+        try {
+            Tinify.setKey("key");
+            server.enqueue(new MockResponse().setResponseCode(200).setBody("png"));
+            List<RecordedEvent> events = record("com.tinify.Result", () -> {
+                try {
+                    new Source("https://api.tinify.com/some/location", new Options()).toFile(file.toString());
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            });
+
+            assertEquals(1, events.size());
+            assertEquals("toFile", events.get(0).getString("operation"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void toBufferAsyncShouldEmitResultEvent() throws IOException {
+        Tinify.setKey("key");
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("png"));
+        List<RecordedEvent> events = record("com.tinify.Result",
+                () -> new Source("https://api.tinify.com/some/location", new Options()).toBufferAsync().join());
+
+        assertEquals(1, events.size());
+        assertEquals("result", events.get(0).getString("operation"));
+        assertEquals(3, events.get(0).getLong("bytes"));
+    }
+}
@@ -0,0 +1,254 @@
+package com.tinify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class HedgingTest {
+    static class ControlledTransport implements Transport {
+        final List<CompletableFuture<Transport.Response>> sent = new ArrayList<>();
+        final Queue<CompletableFuture<Transport.Response>> futures = new LinkedList<>();
+
+        @Override public Transport.Response execute(final Transport.Request request) throws IOException {
+            throw new AssertionError("Hedged requests are sent asynchronously");
+        }
+
+        @Override public synchronized CompletableFuture<Transport.Response> executeAsync(final Transport.Request request) {
+            CompletableFuture<Transport.Response> future = futures.remove();
+            sent.add(future);
+            return future;
+        }
+
+        synchronized int sentCount() {
+            return sent.size();
+        }
+    }
+
+    ControlledTransport transport;
+    ScheduledExecutorService scheduler;
+    Transport.Request request;
+
+    @Before
+    public void setup() {
+        transport = new ControlledTransport();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        request = new Transport.Request("GET", "https://api.tinify.com/output/abc", Transport.Headers.of(), null, false,
+                TinifyEventListener.Endpoint.OUTPUT, 1);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private static Transport.Response response() {
+        return new Transport.Response(200, Transport.Headers.of(), new byte[] {1});
+    }
+
+    private static void waitUntil(final ControlledTransport transport, final int count) throws InterruptedException {
+        for (int i = 0; i < 200 && transport.sentCount() < count; i++) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void slowRequestShouldBeHedged() throws java.lang.Exception {
+        Hedging hedging = new Hedging().minDelay(1, TimeUnit.MILLISECONDS).initialDelay(10, TimeUnit.MILLISECONDS)
+                .maxExtraLoad(1);
+        CompletableFuture<Transport.Response> primary = new CompletableFuture<>();
+        Transport.Response hedged = response();
+        transport.futures.add(primary);
+        transport.futures.add(CompletableFuture.completedFuture(hedged));
+
+        Transport.Response result = hedging.executeAsync(transport, request, scheduler).get(1, TimeUnit.SECONDS);
+        assertThat(result, is(sameInstance(hedged)));
+        assertThat(primary.isCancelled(), is(true));
+        assertThat(hedging.hedges(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void fastRequestShouldNotBeHedged() throws java.lang.Exception {
+        Hedging hedging = new Hedging().minDelay(1, TimeUnit.MILLISECONDS).initialDelay(10, TimeUnit.MILLISECONDS)
+                .maxExtraLoad(1);
+        Transport.Response fast = response();
+        transport.futures.add(CompletableFuture.completedFuture(fast));
+
+        assertThat(hedging.executeAsync(transport, request, scheduler).get(1, TimeUnit.SECONDS), is(sameInstance(fast)));
+        Thread.sleep(50);
+        assertThat(transport.sentCount(), is(equalTo(1)));
+        assertThat(hedging.hedges(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void hedgesShouldBeLimitedByExtraLoad() throws java.lang.Exception {
+        Hedging hedging = new Hedging().minDelay(1, TimeUnit.MILLISECONDS).initialDelay(1, TimeUnit.MILLISECONDS)
+                .maxExtraLoad(0);
+        CompletableFuture<Transport.Response> primary = new CompletableFuture<>();
+        transport.futures.add(primary);
+
+        CompletableFuture<Transport.Response> result = hedging.executeAsync(transport, request, scheduler);
+        Thread.sleep(50);
+        assertThat(transport.sentCount(), is(equalTo(1)));
+
+        Transport.Response slow = response();
+        primary.complete(slow);
+        assertThat(result.get(1, TimeUnit.SECONDS), is(sameInstance(slow)));
+    }
+
+    @Test
+    public void failedRequestShouldWaitForHedge() throws java.lang.Exception {
+        Hedging hedging = new Hedging().minDelay(1, TimeUnit.MILLISECONDS).initialDelay(1, TimeUnit.MILLISECONDS)
+                .maxExtraLoad(1);
+        CompletableFuture<Transport.Response> primary = new CompletableFuture<>();
+        CompletableFuture<Transport.Response> hedge = new CompletableFuture<>();
+        transport.futures.add(primary);
+        transport.futures.add(hedge);
+
+        CompletableFuture<Transport.Response> result = hedging.executeAsync(transport, request, scheduler);
+        waitUntil(transport, 2);
+        primary.completeExceptionally(new IOException("Connection reset"));
+        assertThat(result.isDone(), is(false));
+
+        Transport.Response hedged = response();
+        hedge.complete(hedged);
+        assertThat(result.get(1, TimeUnit.SECONDS), is(sameInstance(hedged)));
+    }
+
+    @Test
+    public void cancellingResultShouldCancelRequests() throws java.lang.Exception {
+        Hedging hedging = new Hedging().minDelay(1, TimeUnit.MILLISECONDS).initialDelay(1, TimeUnit.MILLISECONDS)
+                .maxExtraLoad(1);
+        CompletableFuture<Transport.Response> primary = new CompletableFuture<>();
+        CompletableFuture<Transport.Response> hedge = new CompletableFuture<>();
+        transport.futures.add(primary);
+        transport.futures.add(hedge);
+
+        CompletableFuture<Transport.Response> result = hedging.executeAsync(transport, request, scheduler);
+        waitUntil(transport, 2);
+        result.cancel(true);
+        assertThat(primary.isCancelled(), is(true));
+        assertThat(hedge.isCancelled(), is(true));
+    }
+
+    @Test
+    public void delayShouldFollowPercentileOfResponseTimes() {
+        Hedging hedging = new Hedging().percentile(90).minDelay(0, TimeUnit.MILLISECONDS);
+        assertThat(hedging.delay(), is(equalTo(1000L)));
+        for (int i = 1; i <= 128; i++) {
+            hedging.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertThat(hedging.delay(), is(equalTo(116L)));
+    }
+
+    @Test
+    public void delayShouldNotBeBelowMinDelay() {
+        Hedging hedging = new Hedging().minDelay(200, TimeUnit.MILLISECONDS);
+        for (int i = 1; i <= 128; i++) {
+            hedging.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertThat(hedging.delay(), is(equalTo(200L)));
+    }
+
+    @Test
+    public void clientShouldHedgeGetRequests() {
+        Hedging hedging = new Hedging().minDelay(1, TimeUnit.MILLISECONDS).initialDelay(10, TimeUnit.MILLISECONDS)
+                .maxExtraLoad(1);
+        transport.futures.add(new CompletableFuture<>());
+        transport.futures.add(CompletableFuture.completedFuture(
+                new Transport.Response(200, Transport.Headers.of(), "output".getBytes())));
+        Client client = new Client("key", null, null, new ClientConfig()
+                .transport((proxy, config) -> transport)
+                .hedging(hedging));
+
+        Client.Response response = client.request(Client.Method.GET, "https://api.tinify.com/output/abc");
+        assertThat(new String(response.body), is(equalTo("output")));
+        assertThat(transport.sentCount(), is(equalTo(2)));
+    }
+
+    @Test
+    public void clientShouldNotHedgePostRequests() {
+        final TransportTest.FakeTransport fake = new TransportTest.FakeTransport() {
+            @Override public Transport.Response execute(final Transport.Request request) {
+                requests.add(request);
+                return new Transport.Response(201, Transport.Headers.of(), new byte[0]);
+            }
+        };
+        Client client = new Client("key", null, null, new ClientConfig()
+                .hedging(new Hedging())
+                .transport((proxy, config) -> fake));
+
+        client.request(Client.Method.POST, "/shrink", new byte[] {1});
+        assertThat(fake.requests.size(), is(equalTo(1)));
+    }
+
+    @Test
+    public void errorResponseShouldWaitForHedge() throws java.lang.Exception {
+        Hedging hedging = new Hedging().minDelay(1, TimeUnit.MILLISECONDS).initialDelay(1, TimeUnit.MILLISECONDS)
+                .maxExtraLoad(1);
+        CompletableFuture<Transport.Response> primary = new CompletableFuture<>();
+        CompletableFuture<Transport.Response> hedge = new CompletableFuture<>();
+        transport.futures.add(primary);
+        transport.futures.add(hedge);
+
+        CompletableFuture<Transport.Response> result = hedging.executeAsync(transport, request, scheduler);
+        waitUntil(transport, 2);
+        primary.complete(new Transport.Response(503, Transport.Headers.of(), new byte[0]));
+        assertThat(result.isDone(), is(false));
+
+        Transport.Response hedged = response();
+        hedge.complete(hedged);
+        assertThat(result.get(1, TimeUnit.SECONDS), is(sameInstance(hedged)));
+    }
+
+    @Test
+    public void errorResponseShouldBeReturnedWhenAllRequestsFail() throws java.lang.Exception {
+        Hedging hedging = new Hedging().minDelay(1, TimeUnit.MILLISECONDS).initialDelay(1, TimeUnit.MILLISECONDS)
+                .maxExtraLoad(1);
+        CompletableFuture<Transport.Response> primary = new CompletableFuture<>();
+        CompletableFuture<Transport.Response> hedge = new CompletableFuture<>();
+        transport.futures.add(primary);
+        transport.futures.add(hedge);
+
+        CompletableFuture<Transport.Response> result = hedging.executeAsync(transport, request, scheduler);
+        waitUntil(transport, 2);
+        Transport.Response unavailable = new Transport.Response(503, Transport.Headers.of(), new byte[0]);
+        primary.complete(unavailable);
+        hedge.completeExceptionally(new IOException("Connection reset"));
+        assertThat(result.get(1, TimeUnit.SECONDS), is(sameInstance(unavailable)));
+    }
+
+    @Test
+    public void hedgesShouldBeLimitedByBurst() throws java.lang.Exception {
+        Hedging hedging = new Hedging().minDelay(1, TimeUnit.MILLISECONDS).initialDelay(50, TimeUnit.MILLISECONDS)
+                .maxExtraLoad(0.5).maxBurst(2);
+        for (int i = 0; i < 10; i++) {
+            transport.futures.add(CompletableFuture.completedFuture(response()));
+            hedging.executeAsync(transport, request, scheduler).get(1, TimeUnit.SECONDS);
+        }
+
+        for (int i = 0; i < 6; i++) {
+            transport.futures.add(new CompletableFuture<>());
+        }
+        for (int i = 0; i < 3; i++) {
+            hedging.executeAsync(transport, request, scheduler);
+        }
+        Thread.sleep(200);
+        assertThat(transport.sentCount(), is(equalTo(15)));
+        assertThat(hedging.hedges(), is(equalTo(2L)));
+    }
+}
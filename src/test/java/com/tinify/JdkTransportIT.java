@@ -0,0 +1,202 @@
+package com.tinify;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/* Runs against the packaged jar, so on Java 21 Transport.jdk() is the
+   java.net.http transport from its META-INF/versions/21 layer. */
+public class JdkTransportIT {
+    private MockWebServer server;
+    private Client client;
+
+    @Before
+    public void setup() throws IOException {
+        String version = System.getProperty("java.specification.version");
+        assumeTrue(!version.startsWith("1.") && Integer.parseInt(version) >= 21);
+
+        server = new MockWebServer();
+        server.start();
+        client = newClient(null, server.url("/").toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) server.shutdown();
+    }
+
+    private static Client newClient(final String proxy, final String endpoint) {
+        return new Client("key", null, proxy, new ClientConfig()
+                .apiEndpoint(endpoint)
+                .transport(Transport.jdk())
+                .retryPolicy(RetryPolicy.none()));
+    }
+
+    private void enqueueShrink() {
+        server.enqueue(new MockResponse()
+                .setResponseCode(201)
+                .addHeader("Location", "https://api.tinify.com/foo.png")
+                .addHeader("Compression-Count", "12"));
+    }
+
+    @Test
+    public void getShouldReturnBody() throws java.lang.Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("compressed file"));
+
+        Client.Response response = client.request(Client.Method.GET, "/output/foo.png");
+        assertThat(new String(response.body), is(equalTo("compressed file")));
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertThat(request.getMethod(), is(equalTo("GET")));
+        assertThat(request.getHeader("Authorization"), is(equalTo("Basic YXBpOmtleQ==")));
+    }
+
+    @Test
+    public void postWithOptionsShouldSendJson() throws java.lang.Exception {
+        enqueueShrink();
+
+        Client.Response response = client.request(Client.Method.POST, "/shrink",
+                new Options().with("source", new Options().with("url", "https://example.com/test.jpg")));
+        assertThat(response.headers.get("Location"), is(equalTo("https://api.tinify.com/foo.png")));
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertThat(request.getMethod(), is(equalTo("POST")));
+        assertThat(request.getHeader("Content-Type"), is(equalTo("application/json; charset=utf-8")));
+        assertThat(request.getBody().readUtf8(), is(equalTo("{\"source\":{\"url\":\"https://example.com/test.jpg\"}}")));
+    }
+
+    @Test
+    public void postWithFileShouldSendContents() throws java.lang.Exception {
+        enqueueShrink();
+        Path file = Files.createTempFile("tinify", ".png");
+        try {
+            Files.write(file, "png file".getBytes());
+            client.request(Client.Method.POST, "/shrink", file);
+        } finally {
+            Files.delete(file);
+        }
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertThat(request.getHeader("Content-Length"), is(equalTo("8")));
+        assertThat(request.getHeader("Content-Type"), is(nullValue()));
+        assertThat(request.getBody().readUtf8(), is(equalTo("png file")));
+    }
+
+    @Test
+    public void postWithStreamShouldSendContents() throws java.lang.Exception {
+        enqueueShrink();
+        byte[] data = "png stream".getBytes();
+
+        client.request(Client.Method.POST, "/shrink", new ByteArrayInputStream(data), data.length);
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertThat(request.getHeader("Content-Length"), is(equalTo("10")));
+        assertThat(request.getBody().readUtf8(), is(equalTo("png stream")));
+    }
+
+    @Test
+    public void requestStreamShouldReturnStream() throws java.lang.Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("compressed file"));
+
+        Client.Response response = client.requestStream(Client.Method.GET, "/output/foo.png");
+        assertThat(response.body, is(nullValue()));
+        try (InputStream stream = response.stream) {
+            assertThat(new String(readAll(stream)), is(equalTo("compressed file")));
+        }
+    }
+
+    @Test
+    public void requestAsyncShouldReturnResponse() {
+        enqueueShrink();
+
+        Client.Response response = client.requestAsync(Client.Method.POST, "/shrink", new byte[] {1, 2}).join();
+        assertThat(response.headers.get("Compression-Count"), is(equalTo("12")));
+    }
+
+    @Test
+    public void clientErrorShouldThrowClientException() throws java.lang.Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(400)
+                .setBody("{\"error\":\"BadRequest\",\"message\":\"Oops!\"}"));
+
+        try {
+            client.request(Client.Method.POST, "/shrink", new byte[] {1});
+            fail("Expected an Exception to be thrown");
+        } catch (ClientException e) {
+            assertThat(e.status, is(equalTo(400)));
+            assertThat(e.getMessage(), containsString("Oops!"));
+        }
+    }
+
+    @Test
+    public void streamedServerErrorShouldThrowServerException() throws java.lang.Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(503)
+                .setBody("{\"error\":\"ServiceUnavailable\",\"message\":\"Try again\"}"));
+
+        try {
+            client.requestStream(Client.Method.GET, "/output/foo.png");
+            fail("Expected an Exception to be thrown");
+        } catch (ServerException e) {
+            assertThat(e.status, is(equalTo(503)));
+            assertThat(e.getMessage(), containsString("Try again"));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void requestShouldFailWhenDeadlinePasses() throws java.lang.Exception {
+        server.enqueue(new MockResponse().setResponseCode(201).setHeadersDelay(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        try (RequestContext context = RequestContext.withTimeout(200, TimeUnit.MILLISECONDS)) {
+            client.request(Client.Method.POST, "/shrink");
+            fail("Expected an Exception to be thrown");
+        } catch (DeadlineExceededException e) {
+            assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 2, is(true));
+        }
+    }
+
+    @Test
+    public void proxyShouldReceiveRequestsWithCredentials() throws java.lang.Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(407)
+                .addHeader("Proxy-Authenticate", "Basic realm=\"proxy\""));
+        enqueueShrink();
+
+        Client proxied = newClient("http://user:pass@" + server.getHostName() + ":" + server.getPort(),
+                "http://api.tinify.test");
+        proxied.request(Client.Method.POST, "/shrink");
+
+        RecordedRequest challenged = server.takeRequest(5, TimeUnit.SECONDS);
+        assertThat(challenged.getRequestLine(), is(equalTo("POST http://api.tinify.test/shrink HTTP/1.1")));
+        RecordedRequest authorized = server.takeRequest(5, TimeUnit.SECONDS);
+        assertThat(authorized.getHeader("Proxy-Authorization"), is(equalTo("Basic dXNlcjpwYXNz")));
+    }
+
+    private static byte[] readAll(final InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,69 @@
+package com.tinify;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class JsonTest {
+    @Test
+    public void writeShouldSerializeNestedOptions() {
+        Options options = new Options()
+                .with("resize", new Options().with("method", "fit").with("width", 100));
+        assertThat(options.toJson(), is(equalTo("{\"resize\":{\"method\":\"fit\",\"width\":100}}")));
+    }
+
+    @Test
+    public void writeShouldSerializeArraysAndLists() {
+        Options options = new Options()
+                .with("preserve", new String[] {"copyright", "location"})
+                .with("sizes", Arrays.asList(1, 2.5));
+        assertThat(options.canonicalJson(), is(equalTo("{\"preserve\":[\"copyright\",\"location\"],\"sizes\":[1,2.5]}")));
+    }
+
+    @Test
+    public void writeShouldEscapeStrings() {
+        Options options = new Options().with("path", "a\"b\\c\nd\u0001");
+        assertThat(options.toJson(), is(equalTo("{\"path\":\"a\\\"b\\\\c\\nd\\u0001\"}")));
+    }
+
+    @Test
+    public void writeShouldOmitNullValues() {
+        Options options = new Options().with("width", (Object) null).with("height", false);
+        assertThat(options.toJson(), is(equalTo("{\"height\":false}")));
+    }
+
+    @Test
+    public void canonicalJsonShouldSortKeys() {
+        Options options = new Options().with("b", 1).with("a", new Options().with("d", 2).with("c", 3));
+        assertThat(options.canonicalJson(), is(equalTo("{\"a\":{\"c\":3,\"d\":2},\"b\":1}")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writeShouldRejectNonFiniteNumbers() {
+        new Options().with("width", Double.NaN).toJson();
+    }
+
+    @Test
+    public void readErrorShouldReturnErrorAndMessage() throws IOException {
+        Exception.Data data = Json.readError(
+                "{'error':'Unauthorized','details':{'a':[1]},'message':'Credentials are invalid'}".getBytes());
+        assertThat(data.getError(), is(equalTo("Unauthorized")));
+        assertThat(data.getMessage(), is(equalTo("Credentials are invalid")));
+    }
+
+    @Test
+    public void readErrorWithBlankBodyShouldReturnNull() throws IOException {
+        assertThat(Json.readError(" \n".getBytes()), is(nullValue()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readErrorWithNonObjectShouldThrow() throws IOException {
+        Json.readError("<!-- this is not json -->".getBytes());
+    }
+}
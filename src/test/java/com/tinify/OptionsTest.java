@@ -0,0 +1,45 @@
+package com.tinify;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class OptionsTest {
+    @Test
+    public void copyShouldNotChangeOriginal() {
+        Options base = new Options().with("preserve", new String[] {"copyright"});
+        new Options(base).with("resize", new Options().with("width", 100));
+        assertThat(base.toJson(), is(equalTo("{\"preserve\":[\"copyright\"]}")));
+    }
+
+    @Test
+    public void copyShouldExtendJsonOfOriginal() {
+        Options base = new Options().with("preserve", new String[] {"copyright"});
+        base.toJson();
+        Options variant = new Options(base).with("resize", new Options().with("width", 100));
+        assertThat(variant.toJson(), is(equalTo("{\"preserve\":[\"copyright\"],\"resize\":{\"width\":100}}")));
+    }
+
+    @Test
+    public void withSameKeyShouldReplaceValue() {
+        Options options = new Options().with("width", 100).with("height", 50).with("width", 200);
+        assertThat(options.toJson(), is(equalTo("{\"width\":200,\"height\":50}")));
+    }
+
+    @Test
+    public void withNestedOptionsShouldKeepValueAtTimeOfCall() {
+        Options resize = new Options().with("width", 100);
+        Options options = new Options().with("resize", resize);
+        resize.with("height", 50);
+        assertThat(options.toJson(), is(equalTo("{\"resize\":{\"width\":100}}")));
+    }
+
+    @Test
+    public void isEmptyShouldBeTrueWithoutEntries() {
+        assertThat(new Options().isEmpty(), is(true));
+        assertThat(new Options().with("width", 100).isEmpty(), is(false));
+        assertThat(new Options().toJson(), is(equalTo("{}")));
+    }
+}
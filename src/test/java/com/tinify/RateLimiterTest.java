@@ -0,0 +1,98 @@
+package com.tinify;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+    @Test
+    public void acquireWithinBurstShouldNotWait() {
+        RateLimiter.Bucket bucket = new RateLimiter(1).burst(3).maxWait(0, TimeUnit.MILLISECONDS).bucket("key");
+        bucket.acquire(false);
+        bucket.acquire(false);
+        bucket.acquire(false);
+    }
+
+    @Test(expected = RateLimitException.class)
+    public void acquireBeyondBurstWithoutWaitShouldFailFast() {
+        RateLimiter.Bucket bucket = new RateLimiter(1).burst(1).maxWait(0, TimeUnit.MILLISECONDS).bucket("key");
+        bucket.acquire(false);
+        bucket.acquire(false);
+    }
+
+    @Test
+    public void acquireBeyondBurstShouldWaitForToken() {
+        RateLimiter.Bucket bucket = new RateLimiter(20).burst(1).bucket("key");
+        bucket.acquire(false);
+        long start = System.nanoTime();
+        bucket.acquire(false);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    public void bucketsShouldBeSeparatePerKey() {
+        RateLimiter limiter = new RateLimiter(1).burst(1).maxWait(0, TimeUnit.MILLISECONDS);
+        limiter.bucket("key").acquire(false);
+        limiter.bucket("other").acquire(false);
+    }
+
+    @Test(expected = RateLimitException.class)
+    public void acquireUploadBeyondConcurrencyShouldFail() {
+        RateLimiter.Bucket bucket = new RateLimiter(100).maxConcurrentUploads(1)
+                .maxWait(10, TimeUnit.MILLISECONDS).bucket("key");
+        bucket.acquire(true);
+        bucket.acquire(true);
+    }
+
+    @Test
+    public void releaseShouldAllowNextUpload() {
+        RateLimiter.Bucket bucket = new RateLimiter(100).maxConcurrentUploads(1)
+                .maxWait(10, TimeUnit.MILLISECONDS).bucket("key");
+        bucket.acquire(true);
+        bucket.release(true);
+        bucket.acquire(true);
+    }
+
+    @Test
+    public void acquireAsyncUploadShouldWaitForRelease() throws java.lang.Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            RateLimiter.Bucket bucket = new RateLimiter(100).maxConcurrentUploads(1).bucket("key");
+            bucket.acquireAsync(true, scheduler).get(1, TimeUnit.SECONDS);
+            CompletableFuture<Void> second = bucket.acquireAsync(true, scheduler);
+            Thread.sleep(50);
+            assertThat(second.isDone(), is(false));
+            bucket.release(true);
+            second.get(1, TimeUnit.SECONDS);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void limitedShouldHalveRateAndSucceededShouldRestoreIt() {
+        RateLimiter limiter = new RateLimiter(10);
+        RateLimiter.Bucket bucket = limiter.bucket("key");
+        bucket.limited(-1);
+        assertThat(limiter.rate("key"), is(equalTo(5.0)));
+        for (int i = 0; i < 20; i++) {
+            bucket.succeeded();
+        }
+        assertThat(limiter.rate("key"), is(equalTo(10.0)));
+    }
+
+    @Test(expected = RateLimitException.class)
+    public void limitedWithRetryAfterShouldHoldBackRequests() {
+        RateLimiter limiter = new RateLimiter(10).maxWait(100, TimeUnit.MILLISECONDS);
+        limiter.bucket("key").limited(2000);
+        limiter.bucket("key").acquire(false);
+    }
+}
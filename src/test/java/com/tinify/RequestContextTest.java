@@ -0,0 +1,256 @@
+package com.tinify;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RequestContextTest {
+    MockWebServer server;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+
+        server = new MockWebServer();
+        server.start();
+        new MockUp<HttpUrl>()
+        {
+            @Mock
+            @SuppressWarnings("unused")
+            HttpUrl parse(Invocation inv, String url)
+            {
+                return new HttpUrl.Builder()
+                        .scheme("http")
+                        .host(server.getHostName())
+                        .port(server.getPort())
+                        .encodedPath("/shrink")
+                        .build();
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private static MockResponse slowResponse() {
+        return new MockResponse().setResponseCode(201).setHeadersDelay(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void currentShouldReturnInnermostContext() {
+        assertThat(RequestContext.current(), is(nullValue()));
+        try (RequestContext outer = RequestContext.withTimeout(1, TimeUnit.MINUTES)) {
+            try (RequestContext inner = RequestContext.withTimeout(1, TimeUnit.SECONDS)) {
+                assertThat(RequestContext.current(), is(sameInstance(inner)));
+            }
+            assertThat(RequestContext.current(), is(sameInstance(outer)));
+        }
+        assertThat(RequestContext.current(), is(nullValue()));
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void nestedContextShouldNotExtendDeadline() {
+        try (RequestContext outer = RequestContext.withTimeout(1, TimeUnit.SECONDS)) {
+            try (RequestContext inner = RequestContext.withTimeout(1, TimeUnit.MINUTES)) {
+                assertThat(inner.remaining() <= 1000, is(true));
+            }
+        }
+    }
+
+    @Test
+    public void contextShouldExpire() throws InterruptedException {
+        try (RequestContext context = RequestContext.withTimeout(10, TimeUnit.MILLISECONDS)) {
+            Thread.sleep(20);
+            assertThat(context.isExpired(), is(true));
+            assertThat(context.remaining(), is(equalTo(0L)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void withTimeoutShouldRejectNonPositiveTimeout() {
+        RequestContext.withTimeout(0, TimeUnit.SECONDS);
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void requestShouldFailWhenDeadlinePasses() {
+        server.enqueue(slowResponse());
+        Client client = new Client("key");
+
+        long start = System.nanoTime();
+        try (RequestContext context = RequestContext.withTimeout(200, TimeUnit.MILLISECONDS)) {
+            client.request(Client.Method.POST, "/shrink");
+            fail("Expected an Exception to be thrown");
+        } catch (DeadlineExceededException e) {
+            assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 2, is(true));
+        }
+        assertThat(server.getRequestCount(), is(equalTo(1)));
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void requestShouldNotBeSentAfterDeadline() throws InterruptedException {
+        Client client = new Client("key");
+        try (RequestContext context = RequestContext.withTimeout(1, TimeUnit.MILLISECONDS)) {
+            Thread.sleep(10);
+            client.request(Client.Method.POST, "/shrink");
+            fail("Expected an Exception to be thrown");
+        } catch (DeadlineExceededException e) {
+            assertThat(server.getRequestCount(), is(equalTo(0)));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void requestShouldNotRetryPastDeadline() {
+        server.enqueue(new MockResponse().setResponseCode(500)
+                .setBody("{\"error\":\"InternalServerError\",\"message\":\"Oops!\"}"));
+        Client client = new Client("key", null, null, new ClientConfig()
+                .retryPolicy(RetryPolicy.fixed(1, 10, TimeUnit.SECONDS)));
+
+        try (RequestContext context = RequestContext.withTimeout(1, TimeUnit.SECONDS)) {
+            client.request(Client.Method.POST, "/shrink");
+            fail("Expected an Exception to be thrown");
+        } catch (DeadlineExceededException e) {
+            assertThat(e.getCause(), is(instanceOf(ServerException.class)));
+        }
+        assertThat(server.getRequestCount(), is(equalTo(1)));
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void asyncRequestShouldFailWhenDeadlinePasses() throws InterruptedException {
+        server.enqueue(slowResponse());
+        Client client = new Client("key");
+
+        try (RequestContext context = RequestContext.withTimeout(200, TimeUnit.MILLISECONDS)) {
+            client.requestAsync(Client.Method.POST, "/shrink").get(2, TimeUnit.SECONDS);
+            fail("Expected an Exception to be thrown");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(DeadlineExceededException.class)));
+        } catch (java.util.concurrent.TimeoutException e) {
+            fail("Deadline was not enforced");
+        }
+    }
+
+    @Test
+    public void readTimeoutShouldFailWithConnectionException() {
+        server.enqueue(slowResponse());
+        Client client = new Client("key", null, null, new ClientConfig()
+                .readTimeout(200, TimeUnit.MILLISECONDS)
+                .retryPolicy(RetryPolicy.none()));
+
+        try {
+            client.request(Client.Method.POST, "/shrink");
+            fail("Expected an Exception to be thrown");
+        } catch (ConnectionException e) {
+            assertThat(e, is(not(instanceOf(DeadlineExceededException.class))));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void chainedAsyncCallsShouldKeepDeadline() throws InterruptedException {
+        server.enqueue(new MockResponse().setResponseCode(201)
+                .addHeader("Location", "https://api.tinify.com/some/location"));
+        server.enqueue(slowResponse());
+        Tinify.setKey("key");
+        /* Sets up the client before the deadline starts. */
+        Tinify.client();
+
+        try (RequestContext context = RequestContext.withTimeout(500, TimeUnit.MILLISECONDS)) {
+            Source.fromBufferAsync("png file".getBytes())
+                    .thenCompose(Source::resultAsync)
+                    .thenCompose(result -> result.toFileAsync("unused.png"))
+                    .get(2, TimeUnit.SECONDS);
+            fail("Expected an Exception to be thrown");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(DeadlineExceededException.class)));
+        } catch (java.util.concurrent.TimeoutException e) {
+            fail("Deadline was not passed on to the chained request");
+        } finally {
+            Tinify.setKey(null);
+        }
+        assertThat(server.getRequestCount(), is(equalTo(2)));
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void expiredDeadlineShouldNotCountAsConnectionFailure() {
+        CircuitBreaker breaker = new CircuitBreaker().windowSize(20).minimumCalls(20);
+        Client client = new Client("key", null, null, new ClientConfig()
+                .retryPolicy(RetryPolicy.none())
+                .circuitBreaker(breaker));
+
+        for (int i = 0; i < 20; i++) {
+            server.enqueue(new MockResponse().setResponseCode(201).setHeadersDelay(2, TimeUnit.SECONDS));
+            try (RequestContext context = RequestContext.withTimeout(100, TimeUnit.MILLISECONDS)) {
+                client.request(Client.Method.POST, "/shrink");
+                fail("Expected an Exception to be thrown");
+            } catch (DeadlineExceededException e) {
+                /* expected */
+            }
+        }
+        assertThat(breaker.failureRate(), is(equalTo(0.0)));
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void asyncDeadlineShouldCompleteOnExecutor() throws java.lang.Exception {
+        server.enqueue(slowResponse());
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "callbacks"));
+        Client client = new Client("key", null, null, new ClientConfig().executor(executor));
+
+        try {
+            CompletableFuture<String> thread;
+            try (RequestContext context = RequestContext.withTimeout(100, TimeUnit.MILLISECONDS)) {
+                thread = client.requestAsync(Client.Method.POST, "/shrink")
+                        .handle((response, error) -> Thread.currentThread().getName());
+            }
+            assertThat(thread.get(2, TimeUnit.SECONDS), is(equalTo("callbacks")));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void asyncDeadlineShouldNotCompleteOnScheduler() throws java.lang.Exception {
+        server.enqueue(slowResponse());
+        Client client = new Client("key");
+
+        CompletableFuture<String> thread;
+        try (RequestContext context = RequestContext.withTimeout(100, TimeUnit.MILLISECONDS)) {
+            thread = client.requestAsync(Client.Method.POST, "/shrink")
+                    .handle((response, error) -> Thread.currentThread().getName());
+        }
+        assertThat(thread.get(2, TimeUnit.SECONDS), is(not(equalTo("Tinify scheduler"))));
+    }
+}
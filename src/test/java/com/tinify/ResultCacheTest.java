@@ -0,0 +1,165 @@
+package com.tinify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ResultCacheTest {
+    ResultCache subject;
+    Path directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("tinify_");
+        subject = new ResultCache(directory, 1024);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    public void put(String key, String data) throws IOException {
+        Transport.Headers headers = Transport.Headers.of("Content-Type", "image/png", "Image-Width", "100");
+        subject.put(key, headers, new ByteArrayInputStream(data.getBytes()));
+    }
+
+    @Test
+    public void getWithoutEntryShouldReturnNull() {
+        assertThat(subject.get(ResultCache.key("abc", new Options())), is(nullValue()));
+    }
+
+    @Test
+    public void getAfterPutShouldReturnData() throws IOException {
+        String key = ResultCache.key("abc", new Options());
+        put(key, "compressed file");
+
+        try (Result result = subject.get(key)) {
+            assertThat(result.toBuffer(), is(equalTo("compressed file".getBytes())));
+        }
+    }
+
+    @Test
+    public void getAfterPutShouldReturnHeaders() throws IOException {
+        String key = ResultCache.key("abc", new Options());
+        put(key, "compressed file");
+
+        try (Result result = subject.get(key)) {
+            assertThat(result.mediaType(), is(equalTo("image/png")));
+            assertThat(result.width(), is(equalTo(100)));
+        }
+    }
+
+    @Test
+    public void keyWithDifferentCommandsShouldDiffer() {
+        assertThat(ResultCache.key("abc", new Options()),
+                is(not(equalTo(ResultCache.key("abc", new Options().with("resize", new Options().with("width", 100)))))));
+    }
+
+    @Test
+    public void keyShouldNotDependOnOptionOrder() {
+        Options a = new Options().with("resize", new Options().with("method", "fit").with("width", 100)).with("preserve", "copyright");
+        Options b = new Options().with("preserve", "copyright").with("resize", new Options().with("width", 100).with("method", "fit"));
+        assertThat(ResultCache.key("abc", a), is(equalTo(ResultCache.key("abc", b))));
+    }
+
+    @Test
+    public void putBeyondMaxSizeShouldEvictLeastRecentlyUsed() throws IOException {
+        String first = ResultCache.key("first", null);
+        String second = ResultCache.key("second", null);
+        put(first, new String(new char[600]));
+        Files.setLastModifiedTime(directory.resolve(first.substring(0, 2)).resolve(first),
+                java.nio.file.attribute.FileTime.fromMillis(0));
+        put(second, new String(new char[600]));
+
+        assertThat(subject.get(first), is(nullValue()));
+        subject.get(second).close();
+        assertThat(subject.size() <= 1024, is(true));
+    }
+
+    @Test
+    public void sizeShouldNotCountLockAndTemporaryFiles() throws IOException {
+        Files.write(directory.resolve(".lock"), new byte[100]);
+        Files.createDirectories(directory.resolve("ab"));
+        Files.write(directory.resolve("ab").resolve("abc.tmp"), new byte[100]);
+
+        assertThat(new ResultCache(directory, 1024).size(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void putCloseToMaxSizeShouldKeepEntry() throws IOException {
+        String key = ResultCache.key("abc", null);
+        put(key, new String(new char[1000]));
+
+        try (Result result = subject.get(key)) {
+            assertThat(result, is(not(nullValue())));
+            assertThat(result.toBuffer().length, is(equalTo(1000)));
+        }
+    }
+
+    @Test
+    public void putOverExistingEntryShouldNotCountItTwice() throws IOException {
+        String key = ResultCache.key("abc", null);
+        put(key, new String(new char[600]));
+        long size = subject.size();
+        put(key, new String(new char[600]));
+
+        assertThat(subject.size(), is(equalTo(size)));
+        subject.get(key).close();
+    }
+
+    @Test
+    public void teeReadToEndShouldAddEntry() throws IOException {
+        String key = ResultCache.key("abc", null);
+        Transport.Headers headers = Transport.Headers.of("Content-Type", "image/png");
+        try (InputStream input = subject.tee(key, headers, new ByteArrayInputStream("compressed file".getBytes()))) {
+            while (input.read() != -1) {
+            }
+        }
+
+        try (Result result = subject.get(key)) {
+            assertThat(result.toBuffer(), is(equalTo("compressed file".getBytes())));
+            assertThat(result.mediaType(), is(equalTo("image/png")));
+        }
+    }
+
+    @Test
+    public void teeClosedEarlyShouldNotAddEntry() throws IOException {
+        String key = ResultCache.key("abc", null);
+        Transport.Headers headers = Transport.Headers.of("Content-Type", "image/png");
+        try (InputStream input = subject.tee(key, headers, new ByteArrayInputStream("compressed file".getBytes()))) {
+            input.read(new byte[4]);
+        }
+
+        assertThat(subject.get(key), is(nullValue()));
+        assertThat(subject.size(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void teeWithUnwritableDirectoryShouldReturnData() throws IOException {
+        String key = ResultCache.key("abc", null);
+        Files.write(directory.resolve(key.substring(0, 2)), new byte[0]);
+        Transport.Headers headers = Transport.Headers.of("Content-Type", "image/png");
+        try (InputStream input = subject.tee(key, headers, new ByteArrayInputStream("compressed file".getBytes()))) {
+            byte[] buffer = new byte[64];
+            assertThat(new String(buffer, 0, input.read(buffer)), is(equalTo("compressed file")));
+        }
+
+        assertThat(subject.get(key), is(nullValue()));
+    }
+}
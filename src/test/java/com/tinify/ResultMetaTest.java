@@ -3,12 +3,15 @@ package com.tinify;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.OptionalInt;
 import okhttp3.Headers;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 public class ResultMetaTest {
@@ -56,4 +59,34 @@ public class ResultMetaTest {
         subject = new ResultMeta(Headers.of());
         assertThat(subject.location(), is(nullValue()));
     }
+
+    @Test
+    public void withMetadataOptionalWidthShouldReturnImageWidth() {
+        assertThat(subject.optionalWidth(), is(equalTo(OptionalInt.of(100))));
+    }
+
+    @Test
+    public void withoutMetadataOptionalHeightShouldBeEmpty() {
+        subject = new ResultMeta(Headers.of());
+        assertThat(subject.optionalHeight(), is(equalTo(OptionalInt.empty())));
+    }
+
+    @Test
+    public void withInvalidMetadataWidthShouldReturnNull() {
+        subject = new ResultMeta(Headers.of("Image-Width", "wide"));
+        assertThat(subject.width(), is(nullValue()));
+    }
+
+    @Test
+    public void withRepeatedMetadataShouldReturnLastValue() {
+        subject = new ResultMeta(Headers.of("Image-Width", "100", "image-width", "200"));
+        assertThat(subject.width(), is(equalTo(200)));
+    }
+
+    @Test
+    public void headersShouldReturnAllHeaders() {
+        subject = new ResultMeta(Headers.of("Image-Width", "100", "image-width", "200"));
+        assertThat(subject.headers().values("Image-Width"), is(equalTo(Arrays.asList("100", "200"))));
+        assertThat(subject.headers(), is(sameInstance(subject.headers())));
+    }
 }
@@ -3,7 +3,15 @@ package com.tinify;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
 import okhttp3.Headers;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -101,4 +109,56 @@ public class ResultTest {
         subject = new Result(Headers.of(), null);
         assertThat(subject.extension(), is(nullValue()));
     }
+
+    @Test
+    public void withMetaAndDataToFileAsyncShouldWriteImageData() throws java.lang.Exception {
+        Path tempFile = Files.createTempFile("tinify_", null);
+        tempFile.toFile().deleteOnExit();
+
+        subject.toFileAsync(tempFile.toString()).get(5, TimeUnit.SECONDS);
+        assertThat(Files.readAllBytes(tempFile), is(equalTo("image data".getBytes())));
+    }
+
+    @Test
+    public void withStreamToBufferShouldReturnImageData() {
+        subject = new Result(Transport.Headers.of(), null, new ByteArrayInputStream("image data".getBytes()));
+        assertThat(subject.toBuffer(), is(equalTo("image data".getBytes())));
+    }
+
+    @Test
+    public void withStreamTransferToShouldWriteImageData() throws IOException {
+        subject = new Result(Transport.Headers.of(), null, new ByteArrayInputStream("image data".getBytes()));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        assertThat(subject.transferTo(output), is(equalTo(10L)));
+        assertThat(output.toByteArray(), is(equalTo("image data".getBytes())));
+    }
+
+    @Test
+    public void withStreamToFileShouldWriteImageData() throws IOException {
+        Path tempFile = Files.createTempFile("tinify_", null);
+        tempFile.toFile().deleteOnExit();
+
+        subject = new Result(Transport.Headers.of(), null, new ByteArrayInputStream("image data".getBytes()));
+        subject.toFile(tempFile);
+        assertThat(Files.readAllBytes(tempFile), is(equalTo("image data".getBytes())));
+    }
+
+    @Test
+    public void withStreamInputStreamShouldReturnStream() throws IOException {
+        InputStream stream = new ByteArrayInputStream("image data".getBytes());
+        subject = new Result(Transport.Headers.of(), null, stream);
+        assertThat(subject.inputStream(), is(equalTo(stream)));
+    }
+
+    @Test
+    public void withMetaAndDataOptionalSizeShouldReturnContentLength() {
+        assertThat(subject.optionalSize(), is(equalTo(OptionalInt.of(450))));
+    }
+
+    @Test
+    public void withStructuredSuffixContentTypeExtensionShouldReturnSubtype() {
+        subject = new Result(Headers.of("Content-Type", "image/svg+xml"), "image data".getBytes());
+        assertThat(subject.extension(), is(equalTo("svg+xml")));
+    }
 }
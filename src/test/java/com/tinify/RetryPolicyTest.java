@@ -0,0 +1,86 @@
+package com.tinify;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+    private static Exception rateLimited(final long retryAfter) {
+        Exception error = Exception.create("Slow down", "TooManyRequests", 429);
+        error.retryAfter = retryAfter;
+        return error;
+    }
+
+    @Test
+    public void fixedShouldRetryServerErrorsWithDelay() {
+        RetryPolicy policy = RetryPolicy.fixed(2, 500, TimeUnit.MILLISECONDS);
+        Exception error = Exception.create("Oops!", "InternalServerError", 500);
+        assertThat(policy.delay(1, 0, error), is(equalTo(500L)));
+        assertThat(policy.delay(2, 500, error), is(equalTo(500L)));
+        assertThat(policy.delay(3, 1000, error), is(equalTo(-1L)));
+    }
+
+    @Test
+    public void fixedShouldRetryConnectionErrors() {
+        RetryPolicy policy = RetryPolicy.fixed(1, 500, TimeUnit.MILLISECONDS);
+        assertThat(policy.delay(1, 0, new ConnectionException()), is(equalTo(500L)));
+    }
+
+    @Test
+    public void fixedShouldNotRetryClientErrors() {
+        RetryPolicy policy = RetryPolicy.fixed(1, 500, TimeUnit.MILLISECONDS);
+        assertThat(policy.delay(1, 0, Exception.create("Bad", "BadRequest", 400)), is(equalTo(-1L)));
+    }
+
+    @Test
+    public void noneShouldNeverRetry() {
+        assertThat(RetryPolicy.none().delay(1, 0, new ConnectionException()), is(equalTo(-1L)));
+    }
+
+    @Test
+    public void exponentialShouldStayBelowCappedCeiling() {
+        ExponentialBackoff policy = RetryPolicy.exponential()
+                .maxRetries(10)
+                .baseDelay(100, TimeUnit.MILLISECONDS)
+                .maxDelay(400, TimeUnit.MILLISECONDS);
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            long delay = policy.delay(attempt, 0, new ConnectionException());
+            long ceiling = Math.min(400, 100L << (attempt - 1));
+            assertTrue(delay >= 0 && delay <= ceiling);
+        }
+    }
+
+    @Test
+    public void exponentialShouldWaitAtLeastRetryAfter() {
+        ExponentialBackoff policy = RetryPolicy.exponential().baseDelay(1, TimeUnit.MILLISECONDS);
+        assertThat(policy.delay(1, 0, rateLimited(2000)), is(equalTo(2000L)));
+    }
+
+    @Test
+    public void exponentialShouldNotRetryRateLimitWithoutRetryAfter() {
+        assertThat(RetryPolicy.exponential().delay(1, 0, rateLimited(-1)), is(equalTo(-1L)));
+    }
+
+    @Test
+    public void exponentialShouldNotRetryUnauthorized() {
+        Exception error = Exception.create("Credentials are invalid", "Unauthorized", 401);
+        assertThat(RetryPolicy.exponential().delay(1, 0, error), is(equalTo(-1L)));
+    }
+
+    @Test
+    public void exponentialShouldGiveUpAfterMaxElapsed() {
+        ExponentialBackoff policy = RetryPolicy.exponential().maxElapsed(1, TimeUnit.SECONDS);
+        assertThat(policy.delay(1, 0, rateLimited(5000)), is(equalTo(-1L)));
+    }
+
+    @Test
+    public void exponentialShouldGiveUpAfterMaxRetries() {
+        ExponentialBackoff policy = RetryPolicy.exponential().maxRetries(2);
+        assertThat(policy.delay(3, 0, new ConnectionException()), is(equalTo(-1L)));
+    }
+}
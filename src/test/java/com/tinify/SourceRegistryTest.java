@@ -0,0 +1,59 @@
+package com.tinify;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SourceRegistryTest {
+    @Test
+    public void getWithoutEntryShouldReturnNull() {
+        SourceRegistry subject = new SourceRegistry(1, TimeUnit.HOURS);
+        assertThat(subject.get("abc"), is(nullValue()));
+    }
+
+    @Test
+    public void getAfterPutShouldReturnLocation() {
+        SourceRegistry subject = new SourceRegistry(1, TimeUnit.HOURS);
+        subject.put("abc", "https://api.tinify.com/some/location");
+        assertThat(subject.get("abc"), is(equalTo("https://api.tinify.com/some/location")));
+    }
+
+    @Test
+    public void getAfterTtlShouldReturnNull() throws InterruptedException {
+        SourceRegistry subject = new SourceRegistry(10, TimeUnit.MILLISECONDS);
+        subject.put("abc", "https://api.tinify.com/some/location");
+        Thread.sleep(50);
+        assertThat(subject.get("abc"), is(nullValue()));
+        assertThat(subject.size(), is(equalTo(0)));
+    }
+
+    @Test
+    public void expireShouldRemoveMatchingLocation() {
+        SourceRegistry subject = new SourceRegistry(1, TimeUnit.HOURS);
+        subject.put("abc", "https://api.tinify.com/some/location");
+        subject.expire("abc", "https://api.tinify.com/some/location");
+        assertThat(subject.get("abc"), is(nullValue()));
+    }
+
+    @Test
+    public void expireShouldKeepNewerLocation() {
+        SourceRegistry subject = new SourceRegistry(1, TimeUnit.HOURS);
+        subject.put("abc", "https://api.tinify.com/other/location");
+        subject.expire("abc", "https://api.tinify.com/some/location");
+        assertThat(subject.get("abc"), is(equalTo("https://api.tinify.com/other/location")));
+    }
+
+    @Test
+    public void putOverCapacityShouldKeepSizeBounded() {
+        SourceRegistry subject = new SourceRegistry(1, TimeUnit.HOURS, 2);
+        subject.put("a", "https://api.tinify.com/a");
+        subject.put("b", "https://api.tinify.com/b");
+        subject.put("c", "https://api.tinify.com/c");
+        assertThat(subject.size() <= 2, is(true));
+    }
+}
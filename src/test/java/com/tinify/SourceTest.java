@@ -12,21 +12,28 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isA;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class SourceTest {
     MockWebServer server;
@@ -62,6 +69,12 @@ public class SourceTest {
         server.shutdown();
     }
 
+    public void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
     public void assertJsonEquals(String expected, String actual)
     {
         Gson gson = new Gson();
@@ -556,4 +569,396 @@ public class SourceTest {
         RecordedRequest outputRequest = server.takeRequest(1, TimeUnit.SECONDS);
         assertEquals("GET", outputRequest.getMethod());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void withValidApiKeyFromBufferAsyncShouldReturnSourceWithData() throws java.lang.Exception {
+        Tinify.setKey("valid");
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(201)
+                .addHeader("Location", "https://api.tinify.com/some/location"));
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody("compressed file"));
+
+        byte[] data = Source.fromBufferAsync("png file".getBytes())
+                .thenCompose(Source::toBufferAsync)
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(data, is(equalTo("compressed file".getBytes())));
+    }
+
+    @Test
+    public void withValidApiKeyFromFileAsyncShouldReturnSource() throws java.lang.Exception {
+        Tinify.setKey("valid");
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(201)
+                .addHeader("Location", "https://api.tinify.com/some/location"));
+
+        String filePath = Paths.get(getClass().getResource("/dummy.png").toURI()).toAbsolutePath().toString();
+        assertThat(Source.fromFileAsync(filePath).get(5, TimeUnit.SECONDS), isA(Source.class));
+    }
+
+    @Test
+    public void withoutApiKeyFromBufferAsyncShouldReturnFailedFuture() throws java.lang.Exception {
+        Tinify.setKey(null);
+
+        CompletableFuture<Source> source = Source.fromBufferAsync("png file".getBytes());
+        try {
+            source.get(5, TimeUnit.SECONDS);
+            fail("Expected an Exception to be thrown");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause() instanceof AccountException, is(true));
+        }
+    }
+
+    @Test
+    public void withoutApiKeyFromStreamAsyncShouldReturnFailedFuture() throws java.lang.Exception {
+        Tinify.setKey(null);
+
+        CompletableFuture<Source> source = Source.fromStreamAsync(new ByteArrayInputStream("png file".getBytes()), 8);
+        assertThat(source.isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    public void withValidApiKeyResizeResultAsyncShouldIssuePostWithCommands() throws java.lang.Exception {
+        Tinify.setKey("valid");
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .addHeader("Image-Width", 100)
+                .setBody("small file"));
+
+        Result result = new Source("https://api.tinify.com/some/location", new Options())
+                .resize(new Options().with("width", 100))
+                .resultAsync()
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(result.width(), is(equalTo(100)));
+        RecordedRequest request = server.takeRequest(3, TimeUnit.SECONDS);
+        assertEquals("POST", request.getMethod());
+        assertJsonEquals("{\"resize\":{\"width\":100}}", request.getBody().readUtf8());
+    }
+
+    @Test
+    public void withValidApiKeyStoreAsyncShouldReturnResultMetaWithLocation() throws java.lang.Exception {
+        Tinify.setKey("valid");
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .addHeader("Location", "https://bucket.s3.amazonaws.com/example"));
+
+        ResultMeta meta = new Source("https://api.tinify.com/some/location", new Options())
+                .storeAsync(new Options().with("service", "s3"))
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(meta.location(), is(equalTo("https://bucket.s3.amazonaws.com/example")));
+    }
+
+    @Test
+    public void withValidApiKeyToFileAsyncShouldStoreImageData() throws java.lang.Exception {
+        Tinify.setKey("valid");
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody("compressed file"));
+
+        Path tempFile = Files.createTempFile("tinify_", null);
+        tempFile.toFile().deleteOnExit();
+
+        new Source("https://api.tinify.com/some/location", new Options())
+                .toFileAsync(tempFile.toString())
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(Files.readAllBytes(tempFile),
+                is(equalTo("compressed file".getBytes())));
+    }
+
+    @Test
+    public void withValidApiKeyFromStreamShouldReturnSourceWithData() throws java.lang.Exception {
+        Tinify.setKey("valid");
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(201)
+                .addHeader("Location", "https://api.tinify.com/some/location"));
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody("compressed file"));
+
+        byte[] data = "png file".getBytes();
+        assertThat(Source.fromStream(new ByteArrayInputStream(data), data.length).toBuffer(),
+                is(equalTo("compressed file".getBytes())));
+
+        RecordedRequest request = server.takeRequest(3, TimeUnit.SECONDS);
+        assertEquals("png file", request.getBody().readUtf8());
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void fromFileWithMissingFileShouldThrowIOException() throws java.lang.Exception {
+        Tinify.setKey("valid");
+        Source.fromFile("does-not-exist.png");
+    }
+
+    @Test
+    public void withValidApiKeyResultStreamShouldReturnStreamingResult() throws java.lang.Exception {
+        Tinify.setKey("valid");
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .addHeader("Content-Type", "image/png")
+                .setBody("compressed file"));
+
+        try (Result result = new Source("https://api.tinify.com/some/location", new Options()).resultStream()) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            result.transferTo(output);
+
+            assertThat(result.mediaType(), is(equalTo("image/png")));
+            assertThat(output.toByteArray(), is(equalTo("compressed file".getBytes())));
+        }
+    }
+
+    @Test(expected = ClientException.class)
+    public void withValidApiKeyResultStreamShouldThrowExceptionIfRequestIsNotOK() throws java.lang.Exception {
+        Tinify.setKey("valid");
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(404)
+                .setBody("{'error':'Not found','message':'Oops!'}"));
+
+        new Source("https://api.tinify.com/some/location", new Options()).resultStream();
+    }
+
+    @Test
+    public void withCacheToBufferTwiceShouldCompressOnce() throws java.lang.Exception {
+        Tinify.setKey("valid");
+        Path directory = Files.createTempDirectory("tinify_");
+        Tinify.setCache(new ResultCache(directory, 1024 * 1024));
+
+        try {
+            server.enqueue(new MockResponse()
+                    .setResponseCode(201)
+                    .addHeader("Location", "https://api.tinify.com/some/location"));
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .addHeader("Content-Type", "image/png")
+                    .setBody("compressed file"));
+
+            assertThat(Source.fromBuffer("png file".getBytes()).toBuffer(),
+                    is(equalTo("compressed file".getBytes())));
+
+            Result result = Source.fromBuffer("png file".getBytes()).result();
+            assertThat(result.toBuffer(), is(equalTo("compressed file".getBytes())));
+            assertThat(result.mediaType(), is(equalTo("image/png")));
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            Tinify.setCache(null);
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void withCacheAndDifferentCommandsShouldCompressAgain() throws java.lang.Exception {
+        Tinify.setKey("valid");
+        Path directory = Files.createTempDirectory("tinify_");
+        Tinify.setCache(new ResultCache(directory, 1024 * 1024));
+
+        try {
+            server.enqueue(new MockResponse()
+                    .setResponseCode(201)
+                    .addHeader("Location", "https://api.tinify.com/some/location"));
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody("compressed file"));
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody("small file"));
+
+            Source source = Source.fromBuffer("png file".getBytes());
+            source.toBuffer();
+
+            assertThat(source.resize(new Options().with("width", 100)).toBuffer(),
+                    is(equalTo("small file".getBytes())));
+            assertEquals(3, server.getRequestCount());
+        } finally {
+            Tinify.setCache(null);
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void withCacheToFileTwiceShouldCompressOnce() throws java.lang.Exception {
+        Tinify.setKey("valid");
+        Path directory = Files.createTempDirectory("tinify_");
+        Path tempFile = Files.createTempFile("tinify_", null);
+        tempFile.toFile().deleteOnExit();
+        Tinify.setCache(new ResultCache(directory, 1024 * 1024));
+
+        try {
+            server.enqueue(new MockResponse()
+                    .setResponseCode(201)
+                    .addHeader("Location", "https://api.tinify.com/some/location"));
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody("compressed file"));
+
+            Source.fromBuffer("png file".getBytes()).toFile(tempFile.toString());
+            Files.delete(tempFile);
+            Source.fromBuffer("png file".getBytes()).toFile(tempFile.toString());
+
+            assertThat(Files.readAllBytes(tempFile), is(equalTo("compressed file".getBytes())));
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            Tinify.setCache(null);
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void withCacheCloseToMaxSizeResultStreamShouldReturnData() throws java.lang.Exception {
+        Tinify.setKey("valid");
+        Path directory = Files.createTempDirectory("tinify_");
+        Tinify.setCache(new ResultCache(directory, 1000));
+        String body = new String(new char[990]).replace('\0', 'x');
+
+        try {
+            server.enqueue(new MockResponse()
+                    .setResponseCode(201)
+                    .addHeader("Location", "https://api.tinify.com/some/location"));
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody(body));
+
+            try (Result result = Source.fromBuffer("png file".getBytes()).resultStream()) {
+                assertThat(result.toBuffer(), is(equalTo(body.getBytes())));
+            }
+            try (Result result = Source.fromBuffer("png file".getBytes()).resultStream()) {
+                assertThat(result.toBuffer(), is(equalTo(body.getBytes())));
+            }
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            Tinify.setCache(null);
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void withUnwritableCacheToFileShouldWriteResult() throws java.lang.Exception {
+        Tinify.setKey("valid");
+        Path directory = Files.createTempDirectory("tinify_");
+        Path tempFile = Files.createTempFile("tinify_", null);
+        tempFile.toFile().deleteOnExit();
+        Tinify.setCache(new ResultCache(directory, 1024 * 1024));
+
+        /* Entries cannot be created below a plain file. */
+        Files.delete(directory);
+        Files.write(directory, new byte[0]);
+
+        try {
+            server.enqueue(new MockResponse()
+                    .setResponseCode(201)
+                    .addHeader("Location", "https://api.tinify.com/some/location"));
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody("compressed file"));
+
+            Source.fromBuffer("png file".getBytes()).toFile(tempFile.toString());
+
+            assertThat(Files.readAllBytes(tempFile), is(equalTo("compressed file".getBytes())));
+        } finally {
+            Tinify.setCache(null);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void withRegistryFromBufferTwiceShouldUploadOnce() throws java.lang.Exception {
+        Tinify.setKey("valid");
+        Tinify.setSourceRegistry(new SourceRegistry(1, TimeUnit.HOURS));
+
+        try {
+            server.enqueue(new MockResponse()
+                    .setResponseCode(201)
+                    .addHeader("Location", "https://api.tinify.com/some/location"));
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody("compressed file"));
+
+            Source.fromBuffer("png file".getBytes());
+            assertThat(Source.fromBuffer("png file".getBytes()).toBuffer(),
+                    is(equalTo("compressed file".getBytes())));
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            Tinify.setSourceRegistry(null);
+        }
+    }
+
+    @Test
+    public void withRegistryAndExpiredLocationShouldUploadAgain() throws java.lang.Exception {
+        Tinify.setKey("valid");
+        Tinify.setSourceRegistry(new SourceRegistry(1, TimeUnit.HOURS));
+
+        try {
+            server.enqueue(new MockResponse()
+                    .setResponseCode(201)
+                    .addHeader("Location", "https://api.tinify.com/some/location"));
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(404)
+                    .setBody("{'error':'Not found','message':'Location has expired'}"));
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(201)
+                    .addHeader("Location", "https://api.tinify.com/other/location"));
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody("compressed file"));
+
+            assertThat(Source.fromBuffer("png file".getBytes()).toBuffer(),
+                    is(equalTo("compressed file".getBytes())));
+            assertEquals(4, server.getRequestCount());
+        } finally {
+            Tinify.setSourceRegistry(null);
+        }
+    }
+
+    @Test
+    public void withRegistryAndExpiredLocationAsyncShouldUploadAgain() throws java.lang.Exception {
+        Tinify.setKey("valid");
+        Tinify.setSourceRegistry(new SourceRegistry(1, TimeUnit.HOURS));
+
+        try {
+            server.enqueue(new MockResponse()
+                    .setResponseCode(201)
+                    .addHeader("Location", "https://api.tinify.com/some/location"));
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(404)
+                    .setBody("{'error':'Not found','message':'Location has expired'}"));
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(201)
+                    .addHeader("Location", "https://api.tinify.com/other/location"));
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody("compressed file"));
+
+            assertThat(Source.fromBufferAsync("png file".getBytes()).get().toBufferAsync().get(),
+                    is(equalTo("compressed file".getBytes())));
+            assertEquals(4, server.getRequestCount());
+        } finally {
+            Tinify.setSourceRegistry(null);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.tinify;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.isA;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TinifyBatchTest {
+    MockWebServer server;
+    Path directory;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+
+        server = new MockWebServer();
+        server.start();
+        new MockUp<HttpUrl>()
+        {
+            @Mock
+            @SuppressWarnings("unused")
+            HttpUrl parse(Invocation inv, String url)
+            {
+                if (url.contains("localhost")) {
+                    return inv.proceed();
+                } else {
+                    return new HttpUrl.Builder()
+                            .scheme("http")
+                            .host(server.getHostName())
+                            .port(server.getPort())
+                            .encodedPath(url.replaceFirst(".*(/.*)", "$1"))
+                            .build();
+                }
+            }
+        };
+
+        directory = Files.createTempDirectory("tinify_");
+        Files.write(directory.resolve("a.png"), "png file a".getBytes());
+        Files.write(directory.resolve("b.png"), "png file b".getBytes());
+        Files.write(directory.resolve("c.jpg"), "jpg file c".getBytes());
+
+        Tinify.setKey("valid");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Tinify.setKey(null);
+        server.shutdown();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    public void dispatch(final int failures) {
+        final AtomicInteger remaining = new AtomicInteger(failures);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().equals("/shrink")) {
+                    if (remaining.getAndDecrement() > 0) {
+                        return new MockResponse()
+                                .setResponseCode(400)
+                                .setBody("{'error':'Bad request','message':'Oops!'}");
+                    }
+                    return new MockResponse()
+                            .setResponseCode(201)
+                            .addHeader("Location", "https://api.tinify.com/output");
+                }
+                return new MockResponse()
+                        .setResponseCode(200)
+                        .setBody("compressed");
+            }
+        });
+    }
+
+    @Test
+    public void runWithDirectoryShouldCompressAllFiles() throws IOException {
+        dispatch(0);
+        Path output = directory.resolve("out");
+
+        TinifyBatch.Report report = new TinifyBatch()
+                .parallelism(2)
+                .target(output)
+                .run(directory);
+
+        assertEquals(3, report.succeeded());
+        assertEquals(0, report.failed());
+        assertEquals(30, report.inputBytes());
+        assertEquals(30, report.outputBytes());
+        assertThat(Files.readAllBytes(output.resolve("a.png")), is(equalTo("compressed".getBytes())));
+    }
+
+    @Test
+    public void runWithGlobShouldOnlyCompressMatchingFiles() throws IOException {
+        dispatch(0);
+
+        TinifyBatch.Report report = new TinifyBatch()
+                .target(directory.resolve("out"))
+                .run(directory, "*.png");
+
+        assertEquals(2, report.items().size());
+        assertEquals(2, report.succeeded());
+    }
+
+    @Test
+    public void runWithCommandsShouldPostCommands() throws IOException, InterruptedException {
+        dispatch(0);
+
+        new TinifyBatch()
+                .resize(new Options().with("width", 100))
+                .target(directory.resolve("out"))
+                .run(Stream.of(directory.resolve("a.png")));
+
+        server.takeRequest();
+        RecordedRequest output = server.takeRequest();
+        assertEquals("POST", output.getMethod());
+        assertEquals("{\"resize\":{\"width\":100}}", output.getBody().readUtf8());
+    }
+
+    @Test
+    public void runWithFailureShouldContinueByDefault() throws IOException {
+        dispatch(1);
+
+        TinifyBatch.Report report = new TinifyBatch()
+                .parallelism(1)
+                .target(directory.resolve("out"))
+                .run(directory);
+
+        assertEquals(2, report.succeeded());
+        assertEquals(1, report.failed());
+        assertThat(report.failures().get(0).error(), isA(Throwable.class));
+        assertEquals(ClientException.class, report.failures().get(0).error().getClass());
+    }
+
+    @Test
+    public void runWithFailFastShouldSkipRemainingFiles() throws IOException {
+        dispatch(1);
+
+        TinifyBatch.Report report = new TinifyBatch()
+                .parallelism(1)
+                .failFast(true)
+                .target(directory.resolve("out"))
+                .run(directory);
+
+        assertEquals(1, report.failed());
+        assertEquals(2, report.skipped());
+    }
+
+    @Test
+    public void runWithStageLimitsShouldCompressAllFiles() throws IOException {
+        dispatch(0);
+
+        TinifyBatch.Report report = new TinifyBatch()
+                .parallelism(3)
+                .uploads(1)
+                .downloads(1)
+                .target(directory.resolve("out"))
+                .run(directory);
+
+        assertEquals(3, report.succeeded());
+    }
+
+    @Test
+    public void runInPlaceShouldReplaceInputs() throws IOException {
+        dispatch(0);
+
+        TinifyBatch.Report report = new TinifyBatch().inPlace().run(directory);
+
+        assertEquals(3, report.succeeded());
+        assertThat(Files.readAllBytes(directory.resolve("a.png")), is(equalTo("compressed".getBytes())));
+        try (Stream<Path> paths = Files.list(directory)) {
+            assertEquals(3, paths.count());
+        }
+    }
+
+    @Test
+    public void runWithUnwritableTargetShouldNotLeaveTemporaryFiles() throws IOException {
+        dispatch(0);
+        Path output = directory.resolve("out");
+        Files.createDirectories(output.resolve("a.png").resolve("occupied"));
+
+        TinifyBatch.Report report = new TinifyBatch()
+                .target(output)
+                .run(Stream.of(directory.resolve("a.png")));
+
+        assertEquals(1, report.failed());
+        try (Stream<Path> paths = Files.list(output)) {
+            assertEquals(1, paths.count());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void runWithoutTargetShouldThrowException() throws IOException {
+        new TinifyBatch().run(directory);
+    }
+
+    @Test
+    public void runWithGlobShouldKeepSubdirectoriesInTarget() throws IOException {
+        dispatch(0);
+        Files.createDirectories(directory.resolve("sub"));
+        Files.write(directory.resolve("sub").resolve("a.png"), "png file a".getBytes());
+        Path output = directory.resolve("out");
+
+        TinifyBatch.Report report = new TinifyBatch()
+                .target(output)
+                .run(directory, "**.png");
+
+        assertEquals(3, report.succeeded());
+        assertTrue(Files.exists(output.resolve("a.png")));
+        assertTrue(Files.exists(output.resolve("sub").resolve("a.png")));
+    }
+
+    @Test
+    public void runWithDuplicateOutputsShouldFailDuplicate() throws IOException {
+        dispatch(0);
+        Files.createDirectories(directory.resolve("sub"));
+        Files.write(directory.resolve("sub").resolve("a.png"), "png file a".getBytes());
+
+        TinifyBatch.Report report = new TinifyBatch()
+                .target(directory.resolve("out"))
+                .run(Stream.of(directory.resolve("a.png"), directory.resolve("sub").resolve("a.png")));
+
+        assertEquals(1, report.succeeded());
+        assertEquals(1, report.failed());
+        assertEquals(FileAlreadyExistsException.class, report.failures().get(0).error().getClass());
+    }
+}
@@ -189,4 +189,34 @@ public class TinifyTest {
         String filePath = Paths.get(getClass().getResource("/dummy.png").toURI()).toAbsolutePath().toString();
         assertThat(Tinify.fromFile(filePath), isA(Source.class));
     }
+
+    @Test
+    public void configShouldResetClientWithNewConfig() {
+        Tinify.setKey("abcde");
+        Client client = Tinify.client();
+        ClientConfig config = new ClientConfig().maxRequestsPerHost(10);
+        Tinify.setConfig(config);
+
+        assertThat(Tinify.config(), is(config));
+        assertThat(Tinify.client() == client, is(false));
+        Tinify.setConfig(null);
+    }
+
+    @Test
+    public void clientShouldReturnSameClientToConcurrentCallers() throws InterruptedException {
+        Tinify.setKey("abcde");
+        final Client[] clients = new Client[8];
+        Thread[] threads = new Thread[clients.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+            threads[i] = new Thread(() -> clients[n] = Tinify.client());
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Client client : clients) {
+            assertThat(client == clients[0], is(true));
+        }
+    }
 }
@@ -0,0 +1,168 @@
+package com.tinify;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TransportTest {
+    static class FakeTransport implements Transport {
+        final List<Transport.Request> requests = new ArrayList<>();
+        final Queue<Transport.Response> responses = new LinkedList<>();
+
+        @Override public Transport.Response execute(final Transport.Request request) throws IOException {
+            requests.add(request);
+            Transport.Response response = responses.remove();
+            if (request.stream() && response.status() < 300) {
+                return new Transport.Response(response.status(), response.headers(),
+                        new ByteArrayInputStream(response.body()));
+            }
+            return response;
+        }
+
+        @Override public CompletableFuture<Transport.Response> executeAsync(final Transport.Request request) {
+            requests.add(request);
+            return CompletableFuture.completedFuture(responses.remove());
+        }
+    }
+
+    FakeTransport transport;
+    Client subject;
+
+    @Before
+    public void setup() {
+        transport = new FakeTransport();
+        subject = new Client("key", "MyApp/1.0", null, new ClientConfig()
+                .transport((proxy, config) -> transport)
+                .retryPolicy(RetryPolicy.fixed(1, 1, TimeUnit.MILLISECONDS)));
+    }
+
+    private static Transport.Response response(final int status, final String body) {
+        return new Transport.Response(status, Transport.Headers.of("Compression-Count", "3"), body.getBytes());
+    }
+
+    @Test
+    public void requestShouldBeSentThroughTransport() {
+        transport.responses.add(response(201, "{}"));
+        subject.request(Client.Method.POST, "/shrink", new byte[] {1, 2, 3});
+
+        Transport.Request request = transport.requests.get(0);
+        assertThat(request.method(), is(equalTo("POST")));
+        assertThat(request.url(), is(equalTo("https://api.tinify.com/shrink")));
+        assertThat(request.endpoint(), is(equalTo(TinifyEventListener.Endpoint.SHRINK)));
+        assertThat(request.attempt(), is(equalTo(1)));
+        assertThat(request.headers().get("Authorization"), is(equalTo("Basic YXBpOmtleQ==")));
+        assertThat(request.headers().get("User-Agent").endsWith(" MyApp/1.0"), is(true));
+    }
+
+    @Test
+    public void requestShouldReturnResponseOfTransport() {
+        transport.responses.add(response(200, "output"));
+        Client.Response response = subject.request(Client.Method.GET, "https://api.tinify.com/output/abc");
+
+        assertThat(new String(response.body), is(equalTo("output")));
+        assertThat(subject.compressionCount(), is(equalTo(3)));
+    }
+
+    @Test
+    public void requestShouldRetryWithNextAttempt() {
+        transport.responses.add(response(503, "{\"error\":\"ServiceUnavailable\",\"message\":\"Oops!\"}"));
+        transport.responses.add(response(201, "{}"));
+        subject.request(Client.Method.POST, "/shrink", new byte[] {1});
+
+        assertThat(transport.requests.size(), is(equalTo(2)));
+        assertThat(transport.requests.get(1).attempt(), is(equalTo(2)));
+    }
+
+    @Test
+    public void requestShouldDecodeErrorsOfTransport() {
+        transport.responses.add(response(401, "{\"error\":\"Unauthorized\",\"message\":\"Credentials are invalid\"}"));
+        try {
+            subject.request(Client.Method.POST, "/shrink", new byte[] {1});
+            fail("Expected an AccountException");
+        } catch (AccountException e) {
+            assertThat(e.getStatus(), is(equalTo(401)));
+            assertThat(e.getMessage(), is(equalTo("Credentials are invalid (HTTP 401/Unauthorized)")));
+        }
+    }
+
+    @Test
+    public void requestStreamShouldAskTransportForStream() throws IOException {
+        transport.responses.add(response(200, "output"));
+        Client.Response response = subject.requestStream(Client.Method.GET, "https://api.tinify.com/output/abc");
+
+        assertThat(transport.requests.get(0).stream(), is(true));
+        byte[] body = new byte[6];
+        assertThat(response.stream.read(body), is(equalTo(6)));
+        assertThat(Arrays.equals(body, "output".getBytes()), is(true));
+    }
+
+    @Test
+    public void requestAsyncShouldBeSentThroughTransport() {
+        transport.responses.add(response(201, "{}"));
+        subject.requestAsync(Client.Method.POST, "/shrink", new byte[] {1}).join();
+
+        assertThat(transport.requests.get(0).stream(), is(false));
+        assertThat(transport.requests.get(0).url(), is(equalTo("https://api.tinify.com/shrink")));
+    }
+
+    @Test
+    public void requestAsyncShouldTurnTransportFailuresIntoConnectionException() {
+        subject = new Client("key", null, null, new ClientConfig()
+                .retryPolicy(RetryPolicy.none())
+                .transport((proxy, config) -> new FakeTransport() {
+                    @Override public CompletableFuture<Transport.Response> executeAsync(final Transport.Request request) {
+                        CompletableFuture<Transport.Response> future = new CompletableFuture<>();
+                        future.completeExceptionally(new IOException("Connection reset"));
+                        return future;
+                    }
+                }));
+
+        try {
+            subject.requestAsync(Client.Method.POST, "/shrink", new byte[] {1}).join();
+            fail("Expected a ConnectionException");
+        } catch (java.util.concurrent.CompletionException e) {
+            assertThat(e.getCause() instanceof ConnectionException, is(true));
+            assertThat(e.getCause().getMessage(), is(equalTo("Error while connecting: Connection reset")));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void jdkShouldRequireJava21Layer() {
+        /* Tests run from the class directory, which has only the Java 8 versions. */
+        Transport.jdk().create(null, new ClientConfig());
+    }
+
+    @Test
+    public void requestShouldHaveNoTimeoutWithoutContext() {
+        transport.responses.add(response(201, "{}"));
+        subject.request(Client.Method.POST, "/shrink", new byte[] {1});
+
+        assertThat(transport.requests.get(0).timeout(), is(equalTo(0L)));
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void requestShouldCarryDeadlineOfContext() {
+        transport.responses.add(response(201, "{}"));
+        try (RequestContext context = RequestContext.withTimeout(10, TimeUnit.SECONDS)) {
+            subject.request(Client.Method.POST, "/shrink", new byte[] {1});
+        }
+
+        long timeout = transport.requests.get(0).timeout();
+        assertThat(timeout > 0 && timeout <= 10000, is(true));
+    }
+}
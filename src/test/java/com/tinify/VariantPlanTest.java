@@ -0,0 +1,175 @@
+package com.tinify;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class VariantPlanTest {
+    MockWebServer server;
+    Path directory;
+    AtomicInteger uploads;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+
+        server = new MockWebServer();
+        server.start();
+        new MockUp<HttpUrl>()
+        {
+            @Mock
+            @SuppressWarnings("unused")
+            HttpUrl parse(Invocation inv, String url)
+            {
+                if (url.contains("localhost")) {
+                    return inv.proceed();
+                } else {
+                    return new HttpUrl.Builder()
+                            .scheme("http")
+                            .host(server.getHostName())
+                            .port(server.getPort())
+                            .encodedPath(url.replaceFirst(".*(/.*)", "$1"))
+                            .build();
+                }
+            }
+        };
+
+        uploads = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().equals("/shrink")) {
+                    uploads.incrementAndGet();
+                    return new MockResponse()
+                            .setResponseCode(201)
+                            .addHeader("Location", "https://api.tinify.com/output");
+                }
+                String commands = request.getBody().readUtf8();
+                if (commands.contains("999")) {
+                    return new MockResponse()
+                            .setResponseCode(400)
+                            .setBody("{'error':'Bad request','message':'Oops!'}");
+                }
+                return new MockResponse()
+                        .setResponseCode(200)
+                        .addHeader("Content-Type", commands.contains("webp") ? "image/webp" : "image/png")
+                        .setBody(commands);
+            }
+        });
+
+        directory = Files.createTempDirectory("tinify_");
+        Tinify.setKey("valid");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Tinify.setKey(null);
+        Tinify.setCache(null);
+        server.shutdown();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static VariantPlan plan() {
+        return new VariantPlan()
+                .resize("small", new Options().with("width", 100))
+                .resize("large", new Options().with("width", 500))
+                .convert("webp", new Options().with("type", "image/webp"));
+    }
+
+    @Test
+    public void resultsShouldReturnAllVariantsInPlanOrder() throws IOException {
+        Map<String, Result> results = plan().results(Source.fromBuffer("png file".getBytes()));
+
+        assertThat(results.keySet().toArray(), is(equalTo(new Object[] {"small", "large", "webp"})));
+        assertEquals("{\"resize\":{\"width\":100}}", new String(results.get("small").toBuffer()));
+        assertEquals("{\"resize\":{\"width\":500}}", new String(results.get("large").toBuffer()));
+        assertEquals("image/webp", results.get("webp").mediaType());
+    }
+
+    @Test
+    public void resultsShouldUploadOnce() throws IOException {
+        plan().results(Source.fromBuffer("png file".getBytes()));
+
+        assertEquals(1, uploads.get());
+        assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    public void resultsShouldShareDeferredUpload() throws IOException {
+        Tinify.setCache(new ResultCache(directory.resolve("cache"), 1024 * 1024));
+        plan().results(Source.fromBuffer("png file".getBytes()));
+
+        assertEquals(1, uploads.get());
+    }
+
+    @Test
+    public void resultsWithParallelismShouldReturnAllVariants() throws IOException {
+        Map<String, Result> results = plan().parallelism(1).results(Source.fromBuffer("png file".getBytes()));
+
+        assertEquals(3, results.size());
+    }
+
+    @Test
+    public void resultsShouldThrowErrorOfFailedVariant() throws IOException {
+        VariantPlan plan = plan().resize("invalid", new Options().with("width", 999));
+        try {
+            plan.results(Source.fromBuffer("png file".getBytes()));
+            fail("Expected an Exception to be thrown");
+        } catch (ClientException e) {
+            assertEquals(400, e.getStatus());
+        }
+        assertEquals(5, server.getRequestCount());
+    }
+
+    @Test
+    public void toFilesWithDirectoryShouldUseExtensionOfOutput() throws IOException {
+        Path output = directory.resolve("out");
+        Map<String, Path> paths = plan().toFiles(Source.fromBuffer("png file".getBytes()), output);
+
+        assertEquals(output.resolve("small.png"), paths.get("small"));
+        assertEquals(output.resolve("webp.webp"), paths.get("webp"));
+        assertEquals("{\"resize\":{\"width\":500}}", new String(Files.readAllBytes(output.resolve("large.png"))));
+    }
+
+    @Test
+    public void toFilesWithTargetShouldWriteToTarget() throws IOException {
+        Map<String, Path> paths = plan().toFiles(Source.fromBuffer("png file".getBytes()),
+                name -> directory.resolve("image-" + name + ".bin"));
+
+        for (String name : Arrays.asList("small", "large", "webp")) {
+            assertThat(Files.exists(directory.resolve("image-" + name + ".bin")), is(true));
+            assertEquals(directory.resolve("image-" + name + ".bin"), paths.get(name));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void variantShouldRejectDuplicateNames() {
+        plan().resize("small", new Options().with("width", 50));
+    }
+}
@@ -0,0 +1,57 @@
+package com.tinify;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/* Runs against the packaged jar, so on Java 21 the classes come from its
+   META-INF/versions/21 layer rather than the Java 8 fallbacks. */
+public class VirtualThreadsIT {
+    private MockWebServer server;
+
+    @Before
+    public void setup() throws IOException {
+        String version = System.getProperty("java.specification.version");
+        assumeTrue(!version.startsWith("1.") && Integer.parseInt(version) >= 21);
+
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) server.shutdown();
+    }
+
+    @Test
+    public void virtualThreadsShouldBeAvailable() {
+        assertTrue(VirtualThreads.available());
+    }
+
+    @Test
+    public void requestAsyncWithVirtualThreadsShouldReceiveResponseOnVirtualThread() throws ReflectiveOperationException {
+        server.enqueue(new MockResponse()
+                .setResponseCode(201)
+                .addHeader("Location", "https://api.tinify.com/foo.png")
+                .addHeader("Compression-Count", "12"));
+
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        Client client = new Client("key", null, null, new ClientConfig()
+                .apiEndpoint(server.url("/").toString())
+                .virtualThreads(true)
+                .compressionCountListener((key, count) -> thread.set(Thread.currentThread())));
+
+        Client.Response response = client.requestAsync(Client.Method.POST, "/shrink", new byte[] {}).join();
+        assertEquals("https://api.tinify.com/foo.png", response.headers.get("location"));
+        assertEquals(true, Thread.class.getMethod("isVirtual").invoke(thread.get()));
+    }
+}